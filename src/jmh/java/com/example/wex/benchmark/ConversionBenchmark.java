@@ -0,0 +1,42 @@
+package com.example.wex.benchmark;
+
+import com.example.wex.model.Money;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converting a purchase amount: the fixed-point {@link Money#convert} against the former double rate and
+ * BigDecimal round trip. Compare ns/op and the gc profiler's gc.alloc.rate.norm, bytes allocated per conversion.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ConversionBenchmark {
+    private BigDecimal amountInUSD = new BigDecimal("543.56");
+    private double exchangeRate = 20.518;
+    private long amountInCents = 54356L;
+    private long scaledRate = 20_518_000L;
+
+    @Benchmark
+    public BigDecimal doubleRateConvertAmt() {
+        return amountInUSD.multiply(BigDecimal.valueOf(exchangeRate)).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    @Benchmark
+    public long fixedPointConvert() {
+        return Money.convert(amountInCents, scaledRate);
+    }
+
+    @Benchmark
+    public BigDecimal fixedPointConvertToAmount() {
+        return Money.toAmount(Money.convert(amountInCents, scaledRate));
+    }
+}
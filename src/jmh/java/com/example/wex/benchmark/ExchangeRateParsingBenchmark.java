@@ -0,0 +1,78 @@
+package com.example.wex.benchmark;
+
+import com.example.wex.model.ExchangeRatePage;
+import com.example.wex.service.ExchangeRateClient;
+import com.example.wex.service.ExchangeRateResilience;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a fiscaldata rates_of_exchange response: a {@code readTree} walk, as the lookup used to do,
+ * against the streaming {@link ExchangeRateClient#parsePage} parse. {@code records} is 1 for a latest rate
+ * lookup and larger for the pages read by the rate sync.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ExchangeRateParsingBenchmark {
+    @Param({"1", "1000"})
+    private int records;
+
+    private ObjectMapper objectMapper;
+    private ExchangeRateClient exchangeRateClient;
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper().findAndRegisterModules();
+        var resilience = new ExchangeRateResilience(Duration.ofSeconds(2), Duration.ofSeconds(6), 2,
+                Duration.ofMillis(200), 0.5, 20, 50, 20, 10, Duration.ofSeconds(30));
+        exchangeRateClient = new ExchangeRateClient(WebClient.create(), objectMapper, resilience,
+                new SimpleMeterRegistry(), 6);
+        body = ratesPage(records).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String readTreeFirstRate() throws IOException {
+        JsonNode data = objectMapper.readTree(body).get("data");
+        return data != null && data.size() > 0 ? data.get(0).get("exchange_rate").asText() : null;
+    }
+
+    @Benchmark
+    public ExchangeRatePage streamingParsePage() throws IOException {
+        return exchangeRateClient.parsePage(body);
+    }
+
+    private static String ratesPage(int records) {
+        var page = new StringBuilder("{\"data\":[");
+        var recordDate = LocalDate.parse("2023-03-31");
+        for (int i = 0; i < records; i++) {
+            if (i > 0) {
+                page.append(',');
+            }
+            page.append("{\"record_date\":\"").append(recordDate.minusMonths(i % 240))
+                    .append("\",\"country_currency_desc\":\"Mexico-Peso\",\"exchange_rate\":\"20.")
+                    .append(100 + i % 900).append("\"}");
+        }
+        return page.append("],\"meta\":{\"count\":").append(records)
+                .append(",\"total-count\":").append(records)
+                .append(",\"total-pages\":1},\"links\":{\"next\":null}}")
+                .toString();
+    }
+}
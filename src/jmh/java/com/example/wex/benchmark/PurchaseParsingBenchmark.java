@@ -0,0 +1,63 @@
+package com.example.wex.benchmark;
+
+import com.example.wex.model.Money;
+import com.example.wex.model.PurchaseRequest;
+import com.example.wex.model.PurchaseTrx;
+import com.example.wex.service.PurchaseService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing done by {@code createPurchase} for every request: the ISO transaction date, the USD amount, as a
+ * BigDecimal and straight into cents, and both together into a purchase the way
+ * {@link PurchaseService#toPurchaseTrx} builds it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PurchaseParsingBenchmark {
+    private final String trxDate = "2023-03-31T10:00:00";
+    private final String amount = "553.23";
+    private PurchaseRequest purchaseRequest;
+
+    @Setup
+    public void setUp() {
+        purchaseRequest = new PurchaseRequest();
+        purchaseRequest.setDescription("benchmark purchase");
+        purchaseRequest.setTrxDate(trxDate);
+        purchaseRequest.setAmount(amount);
+    }
+
+    @Benchmark
+    public LocalDateTime parseTransactionDate() {
+        return LocalDateTime.parse(trxDate);
+    }
+
+    @Benchmark
+    public BigDecimal parseAmount() {
+        return new BigDecimal(amount);
+    }
+
+    @Benchmark
+    public long parseCents() {
+        return Money.parseCents(amount);
+    }
+
+    @Benchmark
+    public PurchaseTrx toPurchaseTrx() {
+        return PurchaseTrx.builder()
+                .amountInCents(Money.parseCents(purchaseRequest.getAmount()))
+                .description(purchaseRequest.getDescription())
+                .transactionDate(LocalDateTime.parse(purchaseRequest.getTrxDate()))
+                .build();
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.wex.benchmark;
+
+import com.example.wex.model.PurchaseResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of {@link PurchaseResponse}, configured like Spring Boot's ObjectMapper with
+ * dates written as ISO strings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PurchaseResponseSerializationBenchmark {
+    private ObjectMapper objectMapper;
+    private ObjectWriter responseWriter;
+    private PurchaseResponse purchaseResponse;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper().findAndRegisterModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        responseWriter = objectMapper.writerFor(PurchaseResponse.class);
+        purchaseResponse = PurchaseResponse.builder()
+                .transactionId(99L)
+                .description("this is a test purchase")
+                .trxDate(LocalDateTime.parse("2021-03-31T09:00"))
+                .originalAmt(new BigDecimal("543.56"))
+                .exchangeRate(new BigDecimal("20.518"))
+                .convertedAmt(new BigDecimal("11152.76"))
+                .build();
+    }
+
+    @Benchmark
+    public byte[] writeValueAsBytes() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(purchaseResponse);
+    }
+
+    @Benchmark
+    public byte[] typedWriterAsBytes() throws JsonProcessingException {
+        return responseWriter.writeValueAsBytes(purchaseResponse);
+    }
+}
@@ -0,0 +1,238 @@
+package com.example.wex;
+
+import com.example.wex.model.PurchaseRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drives a mix of purchase posts and converted purchase lookups against the running application at a fixed
+ * arrival rate, with fiscaldata replaced by a local {@link FiscalDataStubServer}. Requests are sent on schedule
+ * whether or not earlier ones have completed, and latency is measured from the scheduled send time, so a
+ * stalled server shows up as latency rather than as a lower request rate.
+ * Every choice, from the operation mix to purchase dates and amounts and the stub's failures, is drawn from
+ * {@code loadtest.seed}, so runs with the same settings send the same requests.
+ * Settings are read from {@code loadtest.*} system properties; {@code ./gradlew loadTest -Ploadtest.rate=500}
+ * passes them through, and {@code -Ploadtest.virtual-threads=true} runs the application with
+ * {@code wex.virtual-threads.enabled}. Percentile distributions are written to {@code loadtest.report-dir}.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class PurchaseLoadTest {
+    private static final double RATE = Double.parseDouble(System.getProperty("loadtest.rate", "200"));
+    private static final Duration DURATION = Duration.parse(System.getProperty("loadtest.duration", "PT30S"));
+    private static final Duration WARMUP = Duration.parse(System.getProperty("loadtest.warmup", "PT10S"));
+    private static final double POST_RATIO = Double.parseDouble(System.getProperty("loadtest.post-ratio", "0.2"));
+    private static final int PURCHASES = Integer.parseInt(System.getProperty("loadtest.purchases", "1000"));
+    private static final long SEED = Long.parseLong(System.getProperty("loadtest.seed", "42"));
+    private static final Duration STUB_LATENCY = Duration.parse(System.getProperty("loadtest.stub.latency", "PT0.05S"));
+    private static final double STUB_ERROR_RATE = Double.parseDouble(System.getProperty("loadtest.stub.error-rate", "0.01"));
+    private static final boolean VIRTUAL_THREADS = Boolean.parseBoolean(System.getProperty("loadtest.virtual-threads", "false"));
+    private static final String MAX_P99 = System.getProperty("loadtest.max-p99", "");
+    private static final Path REPORT_DIR = Path.of(System.getProperty("loadtest.report-dir", "build/reports/loadtest"));
+
+    private static final String CANADA_DOLLAR_PAGE = """
+            {"data":[{"record_date":"2022-12-31","country_currency_desc":"Canada-Dollar","exchange_rate":"1.354"}],
+             "meta":{"total-pages":1}}""";
+    private static final Pattern TRANSACTION_ID = Pattern.compile("\"transactionId\"\\s*:\\s*(\\d+)");
+    private static final LocalDate FIRST_PURCHASE_DATE = LocalDate.parse("2023-01-01");
+
+    private static FiscalDataStubServer fiscalData;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @LocalServerPort
+    private int port;
+
+    private enum Operation {
+        POST, GET
+    }
+
+    private record Scheduled(Operation operation, HttpRequest request) {
+    }
+
+    private static final class Results {
+        final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+        final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+        long scheduled;
+        long elapsedNanos;
+
+        Results() {
+            for (var operation : Operation.values()) {
+                // microseconds, auto-resized, 3 significant digits
+                latencies.put(operation, new ConcurrentHistogram(3));
+                errors.put(operation, new LongAdder());
+            }
+        }
+
+        long count(Operation operation) {
+            return latencies.get(operation).getTotalCount();
+        }
+    }
+
+    @DynamicPropertySource
+    static void fiscalDataProperties(DynamicPropertyRegistry registry) throws IOException {
+        fiscalData = new FiscalDataStubServer()
+                .latency(STUB_LATENCY)
+                .errorRate(STUB_ERROR_RATE, SEED)
+                .respondWith(CANADA_DOLLAR_PAGE);
+        registry.add("fiscaldata.exchangerate.url", fiscalData::url);
+        registry.add("wex.virtual-threads.enabled", () -> VIRTUAL_THREADS);
+    }
+
+    @AfterAll
+    static void stopFiscalData() {
+        fiscalData.close();
+    }
+
+    @Test
+    void testPurchaseMix_Sustains_Arrival_Rate() throws Exception {
+        // Assign
+        var random = new Random(SEED);
+        var transactionIds = seedPurchases(random);
+        run(WARMUP, random, transactionIds);
+
+        // Action
+        var results = run(DURATION, random, transactionIds);
+
+        // Assert
+        report(results);
+        assertAll("LoadTest",
+                () -> assertEquals(results.scheduled, results.count(Operation.POST) + results.count(Operation.GET)),
+                () -> assertEquals(0, results.errors.get(Operation.POST).sum()),
+                () -> assertTrue(MAX_P99.isEmpty() || Duration.parse(MAX_P99).toNanos() / 1000
+                                >= results.latencies.get(Operation.POST).getValueAtPercentile(99),
+                        "POST p99 over " + MAX_P99),
+                () -> assertTrue(MAX_P99.isEmpty() || Duration.parse(MAX_P99).toNanos() / 1000
+                                >= results.latencies.get(Operation.GET).getValueAtPercentile(99),
+                        "GET p99 over " + MAX_P99)
+        );
+    }
+
+    /**
+     * Posts the purchases the lookups pick from, one at a time.
+     */
+    private List<Long> seedPurchases(Random random) throws IOException, InterruptedException {
+        List<Long> transactionIds = new ArrayList<>(PURCHASES);
+        for (int i = 0; i < PURCHASES; i++) {
+            var response = httpClient.send(postPurchase(random, i), HttpResponse.BodyHandlers.ofString());
+            var matcher = TRANSACTION_ID.matcher(response.body());
+            if (response.statusCode() != 200 || !matcher.find()) {
+                throw new IllegalStateException("Could not seed purchase: " + response.statusCode() + " " + response.body());
+            }
+            transactionIds.add(Long.parseLong(matcher.group(1)));
+        }
+        return transactionIds;
+    }
+
+    private Results run(Duration duration, Random random, List<Long> transactionIds) throws IOException {
+        var results = new Results();
+        long interval = (long) (1e9 / RATE);
+        long requests = duration.toNanos() / interval;
+        results.scheduled = requests;
+        long start = System.nanoTime();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long i = 0; i < requests; i++) {
+                // drawn on this thread in send order, so the same seed always sends the same requests
+                var scheduled = random.nextDouble() < POST_RATIO
+                        ? new Scheduled(Operation.POST, postPurchase(random, i))
+                        : new Scheduled(Operation.GET, getConvertedPurchase(transactionIds.get(random.nextInt(transactionIds.size()))));
+                long intendedStart = start + i * interval;
+                long wait = intendedStart - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                executor.submit(() -> send(scheduled, intendedStart, results));
+            }
+        }
+        results.elapsedNanos = System.nanoTime() - start;
+        return results;
+    }
+
+    private void send(Scheduled scheduled, long intendedStart, Results results) {
+        try {
+            var response = httpClient.send(scheduled.request(), HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() >= 400) {
+                results.errors.get(scheduled.operation()).increment();
+            }
+        } catch (IOException e) {
+            results.errors.get(scheduled.operation()).increment();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        results.latencies.get(scheduled.operation()).recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStart));
+    }
+
+    private HttpRequest postPurchase(Random random, long sequence) throws IOException {
+        var purchaseRequest = new PurchaseRequest();
+        purchaseRequest.setDescription("load test purchase " + sequence);
+        purchaseRequest.setTrxDate(FIRST_PURCHASE_DATE.plusDays(random.nextInt(365)).atTime(10, 0).toString());
+        purchaseRequest.setAmount(String.format("%d.%02d", 1 + random.nextInt(999), random.nextInt(100)));
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/demo/purchase"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(purchaseRequest)))
+                .build();
+    }
+
+    private HttpRequest getConvertedPurchase(long transactionId) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/demo/purchase/" + transactionId
+                        + "?currency=Dollar&country=Canada"))
+                .GET()
+                .build();
+    }
+
+    private void report(Results results) throws IOException {
+        Files.createDirectories(REPORT_DIR);
+        double elapsedSeconds = results.elapsedNanos / 1e9;
+        var summary = new StringBuilder(String.format("%nTarget %.0f req/s for %s, seed %d, stub latency %s, stub error rate %.3f, %s threads%n",
+                RATE, DURATION, SEED, STUB_LATENCY, STUB_ERROR_RATE, VIRTUAL_THREADS ? "virtual" : "platform"));
+        summary.append(String.format("%-5s %8s %7s %10s %9s %9s %9s %9s %9s%n",
+                "op", "count", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+        for (var operation : Operation.values()) {
+            var histogram = results.latencies.get(operation);
+            summary.append(String.format("%-5s %8d %7d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    operation, histogram.getTotalCount(), results.errors.get(operation).sum(),
+                    histogram.getTotalCount() / elapsedSeconds,
+                    histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(90) / 1000.0,
+                    histogram.getValueAtPercentile(99) / 1000.0, histogram.getValueAtPercentile(99.9) / 1000.0,
+                    histogram.getMaxValue() / 1000.0));
+            try (var out = new PrintStream(Files.newOutputStream(REPORT_DIR.resolve(operation.name().toLowerCase() + ".hgrm")))) {
+                histogram.outputPercentileDistribution(out, 1000.0);
+            }
+        }
+        System.out.print(summary);
+        Files.writeString(REPORT_DIR.resolve("summary.txt"), summary);
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.wex;
+
+import com.example.wex.model.PurchaseRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Boots the application on Tomcat's platform thread pool and again with {@code wex.virtual-threads.enabled}, and
+ * at each keeps more lookups in flight than {@code server.tomcat.threads.max}. Every lookup holds its request
+ * thread for a fiscaldata call to a local {@link FiscalDataStubServer}: sync, warm-up, the rate cache and
+ * materialized conversions are all switched off, so no lookup is answered without one. Throughput and the heap
+ * in use after a full GC, taken while every lookup is in flight, are compared between the two runs.
+ * Runs with the load tests rather than the unit tests, as its bounds depend on the machine it runs on. Settings
+ * are read from {@code loadtest.*} system properties.
+ */
+public class VirtualThreadLoadTest {
+    private static final int TOMCAT_THREADS = Integer.parseInt(System.getProperty("loadtest.tomcat-threads", "20"));
+    private static final int CONCURRENCY = Integer.parseInt(System.getProperty("loadtest.concurrency", "400"));
+    private static final Duration DURATION = Duration.parse(System.getProperty("loadtest.duration", "PT30S"));
+    private static final Duration WARMUP = Duration.parse(System.getProperty("loadtest.warmup", "PT10S"));
+    private static final Duration STUB_LATENCY = Duration.parse(System.getProperty("loadtest.stub.latency", "PT0.2S"));
+    private static final Path REPORT_DIR = Path.of(System.getProperty("loadtest.report-dir", "build/reports/loadtest"));
+
+    private static final String JAPAN_YEN_PAGE = """
+            {"data":[{"record_date":"2023-03-31","country_currency_desc":"Japan-Yen","exchange_rate":"133.09"}],
+             "meta":{"total-pages":1}}""";
+    private static final Pattern TRANSACTION_ID = Pattern.compile("\"transactionId\"\\s*:\\s*(\\d+)");
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private record Run(boolean virtualThreads, long completed, long errors, double throughput, long heapAfterGc) {
+    }
+
+    @Test
+    void testVirtualThreads_Outserve_Tomcat_Pool_Beyond_Max_Threads() throws Exception {
+        // Assign
+        try (var fiscalData = new FiscalDataStubServer().latency(STUB_LATENCY).respondWith(JAPAN_YEN_PAGE)) {
+
+            // Action
+            var platform = run(false, fiscalData);
+            var virtual = run(true, fiscalData);
+
+            // Assert
+            report(platform, virtual);
+            // each platform thread completes at most one lookup per stub latency
+            double platformCeiling = TOMCAT_THREADS * 1000.0 / STUB_LATENCY.toMillis();
+            assertAll("VirtualThreadLoad",
+                    () -> assertEquals(0, platform.errors()),
+                    () -> assertEquals(0, virtual.errors()),
+                    () -> assertTrue(platform.throughput() <= platformCeiling * 1.1,
+                            "platform throughput " + platform.throughput()),
+                    () -> assertTrue(virtual.throughput() > platform.throughput() * 2,
+                            "virtual throughput " + virtual.throughput() + ", platform " + platform.throughput()),
+                    () -> assertTrue(virtual.heapAfterGc() < platform.heapAfterGc() + 64L * 1024 * 1024,
+                            "virtual heap " + virtual.heapAfterGc() + ", platform " + platform.heapAfterGc())
+            );
+        }
+    }
+
+    private Run run(boolean virtualThreads, FiscalDataStubServer fiscalData) throws Exception {
+        try (var context = new SpringApplicationBuilder(WexApplication.class).run(
+                "--server.port=0",
+                "--server.tomcat.threads.max=" + TOMCAT_THREADS,
+                "--wex.virtual-threads.enabled=" + virtualThreads,
+                "--wex.warmup.enabled=false",
+                "--fiscaldata.exchangerate.url=" + fiscalData.url(),
+                "--fiscaldata.exchangerate.sync.enabled=false",
+                // evicted as soon as they are loaded, so every lookup goes to the stub
+                "--fiscaldata.exchangerate.cache.max-size=0",
+                "--fiscaldata.exchangerate.client.max-connections=" + CONCURRENCY,
+                "--fiscaldata.exchangerate.resilience.max-concurrent-calls=" + CONCURRENCY,
+                // the lookups are in Japan-Yen, so none is answered from a materialized conversion
+                "--purchase.conversion.hot-currencies=Canada-Dollar")) {
+            int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            long transactionId = seedPurchase(port);
+            drive(port, transactionId, WARMUP, virtualThreads);
+            return drive(port, transactionId, DURATION, virtualThreads);
+        }
+    }
+
+    private long seedPurchase(int port) throws IOException, InterruptedException {
+        var purchaseRequest = new PurchaseRequest();
+        purchaseRequest.setDescription("virtual thread load test purchase");
+        purchaseRequest.setTrxDate("2023-04-15T10:00");
+        purchaseRequest.setAmount("543.56");
+        var response = httpClient.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/demo/purchase"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(purchaseRequest)))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        var matcher = TRANSACTION_ID.matcher(response.body());
+        if (response.statusCode() != 200 || !matcher.find()) {
+            throw new IllegalStateException("Could not seed purchase: " + response.statusCode() + " " + response.body());
+        }
+        return Long.parseLong(matcher.group(1));
+    }
+
+    /**
+     * Keeps {@code CONCURRENCY} lookups in flight until {@code duration} has passed, each client sending its next
+     * lookup as soon as the previous one completes. The heap is measured half way through.
+     */
+    private Run drive(int port, long transactionId, Duration duration, boolean virtualThreads) throws InterruptedException {
+        var lookup = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/demo/purchase/" + transactionId
+                        + "?currency=Yen&country=Japan"))
+                .GET()
+                .build();
+        var completed = new LongAdder();
+        var errors = new LongAdder();
+        long start = System.nanoTime();
+        long deadline = start + duration.toNanos();
+        long heapAfterGc;
+        try (var clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < CONCURRENCY; i++) {
+                clients.submit(() -> {
+                    while (System.nanoTime() < deadline) {
+                        try {
+                            var response = httpClient.send(lookup, HttpResponse.BodyHandlers.discarding());
+                            (response.statusCode() == 200 ? completed : errors).increment();
+                        } catch (IOException e) {
+                            errors.increment();
+                        }
+                    }
+                    return null;
+                });
+            }
+            Thread.sleep(duration.dividedBy(2));
+            heapAfterGc = heapAfterGc();
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        return new Run(virtualThreads, completed.sum(), errors.sum(), completed.sum() / elapsedSeconds, heapAfterGc);
+    }
+
+    private static long heapAfterGc() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private void report(Run... runs) throws IOException {
+        Files.createDirectories(REPORT_DIR);
+        var summary = new StringBuilder(String.format("%n%d lookups in flight, server.tomcat.threads.max %d, stub latency %s, %s%n",
+                CONCURRENCY, TOMCAT_THREADS, STUB_LATENCY, DURATION));
+        summary.append(String.format("%-9s %9s %7s %10s %16s%n", "threads", "completed", "errors", "req/s", "heap after GC MB"));
+        for (var run : runs) {
+            summary.append(String.format("%-9s %9d %7d %10.1f %16.1f%n",
+                    run.virtualThreads() ? "virtual" : "platform", run.completed(), run.errors(), run.throughput(),
+                    run.heapAfterGc() / (1024.0 * 1024.0)));
+        }
+        System.out.print(summary);
+        Files.writeString(REPORT_DIR.resolve("virtual-threads.txt"), summary);
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.wex.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.Executors;
+
+@Configuration
+public class SchedulerConfig {
+
+    /**
+     * Scheduler the reactive read path offloads blocking JPA calls to. On platform threads it is bounded to the
+     * connection pool size, so queued lookups wait here instead of holding a thread while waiting for a connection.
+     * In virtual thread mode each lookup gets its own virtual thread and the pool alone bounds concurrency.
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler repositoryScheduler(@Value("${purchase.repository.scheduler.max-threads:10}") int maxThreads,
+                                         @Value("${purchase.repository.scheduler.max-queued-tasks:10000}") int maxQueuedTasks,
+                                         @Value("${wex.virtual-threads.enabled:false}") boolean virtualThreads) {
+        if (virtualThreads) {
+            return Schedulers.fromExecutorService(Executors.newVirtualThreadPerTaskExecutor(), "purchase-repository");
+        }
+        return Schedulers.newBoundedElastic(maxThreads, maxQueuedTasks, "purchase-repository");
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.wex.config;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+@Configuration
+public class WebClientConfig {
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider exchangeRateConnectionProvider(
+            @Value("${fiscaldata.exchangerate.client.max-connections:50}") int maxConnections,
+            @Value("${fiscaldata.exchangerate.client.pending-acquire-timeout:PT5S}") Duration pendingAcquireTimeout,
+            @Value("${fiscaldata.exchangerate.client.max-idle-time:PT30S}") Duration maxIdleTime) {
+        return ConnectionProvider.builder("fiscaldata")
+                .maxConnections(maxConnections)
+                .pendingAcquireTimeout(pendingAcquireTimeout)
+                .maxIdleTime(maxIdleTime)
+                .evictInBackground(maxIdleTime)
+                .build();
+    }
+
+    /**
+     * Single keep-alive client for the fiscaldata api. Connections, and with them TLS sessions, are pooled and
+     * reused across requests instead of being set up again by {@code WebClient.create()} on every lookup.
+     */
+    @Bean
+    public WebClient exchangeRateWebClient(WebClient.Builder webClientBuilder,
+                                           ConnectionProvider exchangeRateConnectionProvider,
+                                           @Value("${fiscaldata.exchangerate.url}") String exchangeRateUrl,
+                                           @Value("${fiscaldata.exchangerate.client.connect-timeout:PT2S}") Duration connectTimeout,
+                                           @Value("${fiscaldata.exchangerate.client.read-timeout:PT5S}") Duration readTimeout,
+                                           @Value("${fiscaldata.exchangerate.client.max-in-memory-size:4MB}") DataSize maxInMemorySize) {
+        var httpClient = HttpClient.create(exchangeRateConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .keepAlive(true)
+                .responseTimeout(readTimeout)
+                .compress(true);
+        // loads the event loop, native transport and DNS resolver now rather than on the first lookup
+        httpClient.warmup().block();
+
+        return webClientBuilder
+                .baseUrl(exchangeRateUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize((int) maxInMemorySize.toBytes()))
+                .build();
+    }
+}
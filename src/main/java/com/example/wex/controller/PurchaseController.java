@@ -1,8 +1,25 @@
 package com.example.wex.controller;
 
+import com.example.wex.model.AggregateGranularity;
+import com.example.wex.model.BatchPurchaseResponse;
+import com.example.wex.model.BulkConversionResponse;
+import com.example.wex.model.IngestResponse;
+import com.example.wex.model.MultiCurrencyResponse;
+import com.example.wex.model.PurchaseAggregateResponse;
+import com.example.wex.model.PurchaseFilter;
+import com.example.wex.model.PurchasePage;
 import com.example.wex.model.PurchaseRequest;
 import com.example.wex.model.PurchaseResponse;
+import com.example.wex.service.IdempotencyKeyInProgressException;
+import com.example.wex.service.IdempotencyKeyStore;
+import com.example.wex.service.PurchaseAggregateService;
+import com.example.wex.service.PurchaseExportService;
+import com.example.wex.service.PurchaseBatchService;
+import com.example.wex.service.PurchaseIngestService;
+import com.example.wex.service.PurchaseListingService;
+import com.example.wex.service.PurchaseRollupService;
 import com.example.wex.service.PurchaseService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
@@ -11,20 +28,34 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.reactive.function.client.WebClientException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Mono;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeParseException;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequiredArgsConstructor
@@ -33,9 +64,18 @@ import java.util.NoSuchElementException;
 public class PurchaseController {
 
     private final PurchaseService purchaseService;
+    private final PurchaseBatchService purchaseBatchService;
+    private final PurchaseIngestService purchaseIngestService;
+    private final PurchaseListingService purchaseListingService;
+    private final ObjectMapper objectMapper;
+    private final IdempotencyKeyStore idempotencyKeyStore;
+    private final PurchaseAggregateService purchaseAggregateService;
+    private final PurchaseRollupService purchaseRollupService;
+    private final PurchaseExportService purchaseExportService;
 
     @PostMapping("")
-    @Operation(description = "Post a purchase in US dollars", responses = {
+    @Operation(description = "Post a purchase in US dollars. Posts retried with the same Idempotency-Key " +
+            "return the transaction Id the first one created", responses = {
             @ApiResponse(responseCode = "200", description = "Purchase transaction Id",
                     content = @Content(mediaType = "application/json",examples = {
                             @ExampleObject(value = """
@@ -44,17 +84,206 @@ public class PurchaseController {
                                     }""")
                     }))
     })
-    public ResponseEntity<Map<String,Long>> postPurchase( @Valid @RequestBody PurchaseRequest request){
+    public ResponseEntity<Map<String,Long>> postPurchase(@RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                                                         @Valid @RequestBody PurchaseRequest request){
         try {
-            var trxId = purchaseService.createPurchase(request).getTrxId();
-            return new ResponseEntity<>(Map.of("transactionId",trxId), HttpStatus.OK);
+            if (idempotencyKey == null || idempotencyKey.isBlank()) {
+                var trxId = purchaseService.createPurchase(request).getTrxId();
+                return new ResponseEntity<>(Map.of("transactionId",trxId), HttpStatus.OK);
+            }
+            if (idempotencyKey.length() > IdempotencyKeyStore.MAX_KEY_LENGTH) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            var resolution = idempotencyKeyStore.resolve(idempotencyKey,
+                    () -> purchaseService.createPurchase(request).getTrxId());
+            return ResponseEntity.ok()
+                    .header("Idempotent-Replayed", String.valueOf(resolution.replayed()))
+                    .body(Map.of("transactionId",resolution.trxId()));
         } catch (NumberFormatException | DateTimeParseException ex) {
             return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (IdempotencyKeyInProgressException e) {
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
+        } catch (RejectedExecutionException e) {
+            return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
         } catch (Exception e) {
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(description = "Post a json array of purchases in US dollars", responses =
+    @ApiResponse(responseCode = "200", description = "Transaction Id or rejection reason of each purchase",
+            content = @Content(mediaType = "application/json",schema = @Schema(implementation = BatchPurchaseResponse.class))))
+    public ResponseEntity<BatchPurchaseResponse> postPurchases(@RequestBody List<PurchaseRequest> requests){
+        return new ResponseEntity<>(purchaseBatchService.createPurchases(requests), HttpStatus.OK);
+    }
+
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(description = "Post newline delimited json purchases in US dollars", responses =
+    @ApiResponse(responseCode = "200", description = "Transaction Id or rejection reason of each purchase",
+            content = @Content(mediaType = "application/json",schema = @Schema(implementation = BatchPurchaseResponse.class))))
+    public ResponseEntity<BatchPurchaseResponse> postPurchasesNdjson(InputStream requests){
+        try {
+            return new ResponseEntity<>(purchaseBatchService.createPurchases(requests), HttpStatus.OK);
+        } catch (IOException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    @PostMapping(value = "/ingest", consumes = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    @Operation(description = "Stream newline delimited json, or a json array, of purchases in US dollars of any size", responses = {
+            @ApiResponse(responseCode = "200", description = "Ingestion summary",
+                    content = @Content(mediaType = "application/json",schema = @Schema(implementation = IngestResponse.class))),
+            @ApiResponse(responseCode = "400", description = "Ingestion summary up to the malformed record the upload stopped at",
+                    content = @Content(mediaType = "application/json",schema = @Schema(implementation = IngestResponse.class)))})
+    public ResponseEntity<IngestResponse> ingestPurchases(InputStream requests){
+        try {
+            var response = purchaseIngestService.ingestPurchases(requests);
+            return new ResponseEntity<>(response, response.getMalformed() == null ? HttpStatus.OK : HttpStatus.BAD_REQUEST);
+        } catch (IOException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (IllegalStateException e) {
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @GetMapping("/conversions")
+    @Operation(description = "Get purchase details of up to purchase.listing.max-page-size transaction ids, or of the purchases " +
+            "in a date range a page at a time, converted to one currency. Pass nextAfterDate and nextAfterId of a page as afterDate and afterId " +
+            "to get the next one", responses =
+    @ApiResponse(responseCode = "200", description = "Converted purchase details",
+            content = @Content(mediaType = "application/json",schema = @Schema(implementation = BulkConversionResponse.class))))
+    public ResponseEntity<BulkConversionResponse> getPurchases(@RequestParam(required = false) List<Long> transactionIds,
+                                                               @RequestParam(required = false)
+                                                               @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                               @RequestParam(required = false)
+                                                               @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                               @RequestParam(required = false)
+                                                               @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime afterDate,
+                                                               @RequestParam(required = false) Long afterId,
+                                                               @RequestParam(defaultValue = "100") int limit,
+                                                               @RequestParam String currency,
+                                                               @RequestParam String country){
+        try {
+            if (transactionIds != null && !transactionIds.isEmpty()) {
+                return new ResponseEntity<>(purchaseService.getPurchases(transactionIds, currency, country), HttpStatus.OK);
+            }
+            if (from != null && to != null) {
+                return new ResponseEntity<>(purchaseService.getPurchases(from, to, afterDate, afterId, limit, currency, country), HttpStatus.OK);
+            }
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (IllegalArgumentException | WebClientResponseException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (IOException ioe) {
+            return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+    }
+
+    @GetMapping("")
+    @Operation(description = "List purchases by transaction date and amount, a page at a time. " +
+            "Pass nextAfterDate and nextAfterId of a page as afterDate and afterId to get the next one", responses =
+    @ApiResponse(responseCode = "200", description = "Page of purchases",
+            content = @Content(mediaType = "application/json",schema = @Schema(implementation = PurchasePage.class))))
+    public ResponseEntity<PurchasePage> listPurchases(@RequestParam(required = false)
+                                                      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                      @RequestParam(required = false)
+                                                      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                      @RequestParam(required = false) BigDecimal minAmount,
+                                                      @RequestParam(required = false) BigDecimal maxAmount,
+                                                      @RequestParam(required = false)
+                                                      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime afterDate,
+                                                      @RequestParam(required = false) Long afterId,
+                                                      @RequestParam(defaultValue = "100") int limit){
+        var filter = new PurchaseFilter(from, to, minAmount, maxAmount);
+        return new ResponseEntity<>(purchaseListingService.listPurchases(filter, afterDate, afterId, limit), HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(description = "Stream all purchases by transaction date and amount as newline delimited json")
+    public ResponseEntity<StreamingResponseBody> streamPurchases(@RequestParam(required = false)
+                                                                 @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                                 @RequestParam(required = false)
+                                                                 @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                                 @RequestParam(required = false) BigDecimal minAmount,
+                                                                 @RequestParam(required = false) BigDecimal maxAmount){
+        var filter = new PurchaseFilter(from, to, minAmount, maxAmount);
+        StreamingResponseBody body = outputStream -> {
+            try (var writer = objectMapper.writer().withRootValueSeparator("\n").writeValues(outputStream)) {
+                purchaseListingService.streamPurchases(filter, purchaseTrx -> {
+                    try {
+                        writer.write(purchaseTrx);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    @GetMapping("/aggregates")
+    @Operation(description = "Get purchase count, total, min and max per DAY or MONTH from precomputed daily rollups, " +
+            "optionally also converted to one currency", responses =
+    @ApiResponse(responseCode = "200", description = "Aggregates in date order",
+            content = @Content(mediaType = "application/json",schema = @Schema(implementation = PurchaseAggregateResponse.class))))
+    public ResponseEntity<PurchaseAggregateResponse> getAggregates(@RequestParam
+                                                                   @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                                   @RequestParam
+                                                                   @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                                   @RequestParam(defaultValue = "DAY") AggregateGranularity granularity,
+                                                                   @RequestParam(required = false) String currency,
+                                                                   @RequestParam(required = false) String country){
+        if (from.isAfter(to) || (currency == null) != (country == null)) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        try {
+            return new ResponseEntity<>(purchaseAggregateService.getAggregates(from, to, granularity, currency, country),
+                    HttpStatus.OK);
+        } catch (WebClientResponseException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (IOException ioe) {
+            return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+    }
+
+    @PostMapping("/aggregates/rebuild")
+    @Operation(description = "Recompute the daily rollups of a date range from its purchases, " +
+            "to backfill purchases written before rollups existed", responses =
+    @ApiResponse(responseCode = "200", description = "Number of days with purchases",
+            content = @Content(mediaType = "application/json",examples = {
+                    @ExampleObject(value = """
+                            {
+                              "days": 31
+                            }""")
+            })))
+    public ResponseEntity<Map<String,Integer>> rebuildAggregates(@RequestParam
+                                                                 @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                                 @RequestParam
+                                                                 @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to){
+        if (from.isAfter(to)) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        return new ResponseEntity<>(Map.of("days", purchaseRollupService.rebuild(from, to)), HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/export", produces = "application/gzip")
+    @Operation(description = "Export every purchase made in a date range, converted to one currency, as gzip compressed CSV")
+    public ResponseEntity<StreamingResponseBody> exportPurchases(@RequestParam
+                                                                 @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                                 @RequestParam
+                                                                 @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                                 @RequestParam String currency,
+                                                                 @RequestParam String country){
+        if (from.isAfter(to)) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        StreamingResponseBody body = outputStream -> purchaseExportService.export(from, to, currency, country, outputStream);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/gzip"))
+                .header("Content-Disposition", "attachment; filename=\"purchases-%s-%s.csv.gz\"".formatted(from, to))
+                .body(body);
+    }
+
     @GetMapping("/{transactionId}")
     @Operation(description = "Get purchase details of a transaction id", responses =
     @ApiResponse(responseCode = "200", description = "Purchase transaction details",
@@ -70,8 +299,50 @@ public class PurchaseController {
             return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         } catch (NoSuchElementException e2) {
             return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        } catch (WebClientResponseException e3) {
+            // fiscaldata rejected the lookup itself, transient failures arrive as an IOException
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         } catch (IOException ioe) {
             return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
         }
     }
+
+    @GetMapping(value = "/{transactionId}", params = "target")
+    @Operation(description = "Get purchase details of a transaction id in several currencies, " +
+            "each target given as Country-Currency", responses =
+    @ApiResponse(responseCode = "200", description = "Purchase transaction details per currency",
+            content = @Content(mediaType = "application/json",schema = @Schema(implementation = MultiCurrencyResponse.class))))
+    public Mono<ResponseEntity<MultiCurrencyResponse>> getPurchase(@PathVariable Long transactionId,
+                                                                   @RequestParam("target") List<String> targets){
+        try {
+            return purchaseService.getPurchase(transactionId, targets)
+                    .map(response -> new ResponseEntity<>(response, HttpStatus.OK))
+                    .onErrorResume(NoSuchElementException.class, e -> withStatus(HttpStatus.NO_CONTENT))
+                    .onErrorResume(WebClientResponseException.class, e -> withStatus(HttpStatus.BAD_REQUEST))
+                    .onErrorResume(e -> e instanceof IOException || e instanceof WebClientException,
+                            e -> withStatus(HttpStatus.SERVICE_UNAVAILABLE));
+        } catch (IllegalArgumentException e) {
+            return withStatus(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    @GetMapping("/{transactionId}/async")
+    @Operation(description = "Get purchase details of a transaction id without blocking a request thread", responses =
+    @ApiResponse(responseCode = "200", description = "Purchase transaction details",
+            content = @Content(mediaType = "application/json",schema = @Schema(implementation = PurchaseResponse.class))))
+    public Mono<ResponseEntity<PurchaseResponse>> getPurchaseAsync(@PathVariable Long transactionId,
+                                                                   @RequestParam String currency,
+                                                                   @RequestParam String country){
+        return purchaseService.getPurchaseAsync(transactionId, currency, country)
+                .map(response -> new ResponseEntity<>(response, HttpStatus.OK))
+                .defaultIfEmpty(new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR))
+                .onErrorResume(NoSuchElementException.class, e -> withStatus(HttpStatus.NO_CONTENT))
+                .onErrorResume(WebClientResponseException.class, e -> withStatus(HttpStatus.BAD_REQUEST))
+                .onErrorResume(e -> e instanceof IOException || e instanceof WebClientException,
+                        e -> withStatus(HttpStatus.SERVICE_UNAVAILABLE));
+    }
+
+    private static <T> Mono<ResponseEntity<T>> withStatus(HttpStatus status) {
+        return Mono.just(new ResponseEntity<>(status));
+    }
 }
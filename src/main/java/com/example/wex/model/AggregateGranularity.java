@@ -0,0 +1,12 @@
+package com.example.wex.model;
+
+import java.time.LocalDate;
+
+public enum AggregateGranularity {
+    DAY,
+    MONTH;
+
+    public LocalDate periodStart(LocalDate date) {
+        return this == MONTH ? date.withDayOfMonth(1) : date;
+    }
+}
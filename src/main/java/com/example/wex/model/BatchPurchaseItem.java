@@ -0,0 +1,18 @@
+package com.example.wex.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchPurchaseItem {
+    @Schema(description = "Position of the purchase in the submitted batch",requiredMode = Schema.RequiredMode.REQUIRED)
+    int index;
+    @Schema(description = "Transaction Id of the saved purchase")
+    Long transactionId;
+    @Schema(description = "Reason the purchase was rejected")
+    String error;
+}
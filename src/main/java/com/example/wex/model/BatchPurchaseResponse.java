@@ -0,0 +1,18 @@
+package com.example.wex.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class BatchPurchaseResponse {
+    @Schema(description = "Number of purchases saved",requiredMode = Schema.RequiredMode.REQUIRED)
+    int created;
+    @Schema(description = "Number of purchases rejected",requiredMode = Schema.RequiredMode.REQUIRED)
+    int failed;
+    @Schema(description = "Outcome of each submitted purchase, in submission order",requiredMode = Schema.RequiredMode.REQUIRED)
+    List<BatchPurchaseItem> items;
+}
@@ -0,0 +1,24 @@
+package com.example.wex.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+public class BulkConversionResponse {
+    @Schema(description = "Purchases converted to the requested currency",requiredMode = Schema.RequiredMode.REQUIRED)
+    List<PurchaseResponse> conversions;
+    @Schema(description = "Transaction Ids with no exchange rate within the lookback window of the purchase date",
+            requiredMode = Schema.RequiredMode.REQUIRED)
+    List<Long> missingRateIds;
+    @Schema(description = "Requested transaction Ids that do not exist",requiredMode = Schema.RequiredMode.REQUIRED)
+    List<Long> notFoundIds;
+    @Schema(description = "afterDate to request the next page of a date range with, absent on the last page")
+    LocalDateTime nextAfterDate;
+    @Schema(description = "afterId to request the next page of a date range with, absent on the last page")
+    Long nextAfterId;
+}
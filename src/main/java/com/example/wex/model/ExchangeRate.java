@@ -0,0 +1,38 @@
+package com.example.wex.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_exchange_rate_currency_date",
+        columnNames = {"country_currency_desc", "record_date"}))
+public class ExchangeRate {
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    long id;
+
+    @Column(nullable = false, length = 100)
+    String countryCurrencyDesc;
+
+    @Column(nullable = false)
+    LocalDate recordDate;
+
+    @Column(nullable = false, precision = 19, scale = 6)
+    BigDecimal exchangeRate;
+}
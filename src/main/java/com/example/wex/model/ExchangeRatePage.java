@@ -0,0 +1,6 @@
+package com.example.wex.model;
+
+import java.util.List;
+
+public record ExchangeRatePage(List<ExchangeRateRecord> data, int totalPages) {
+}
@@ -0,0 +1,13 @@
+package com.example.wex.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record ExchangeRateRecord(@JsonProperty("record_date") LocalDate recordDate,
+                                 @JsonProperty("country_currency_desc") String countryCurrencyDesc,
+                                 @JsonProperty("exchange_rate") BigDecimal exchangeRate) {
+}
@@ -0,0 +1,34 @@
+package com.example.wex.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Transaction id a client supplied Idempotency-Key created, persisted so replays are recognised across restarts
+ * and instances. The key is stored without a transaction id while its purchase is being created.
+ */
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(indexes = @Index(name = "idx_idempotency_key_created_at", columnList = "created_at"))
+public class IdempotencyKey {
+    @Id
+    @Column(length = 255)
+    String idempotencyKey;
+
+    Long trxId;
+
+    @Column(nullable = false)
+    LocalDateTime createdAt;
+}
@@ -0,0 +1,25 @@
+package com.example.wex.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class IngestResponse {
+    @Schema(description = "Number of purchases saved",requiredMode = Schema.RequiredMode.REQUIRED)
+    long saved;
+    @Schema(description = "Number of purchases rejected",requiredMode = Schema.RequiredMode.REQUIRED)
+    long rejected;
+    @Schema(description = "Rejection reasons of the first rejected purchases",requiredMode = Schema.RequiredMode.REQUIRED)
+    List<BatchPurchaseItem> errors;
+    @Schema(description = "Malformed record the upload stopped at, absent when the whole upload was read. " +
+            "Purchases before it are saved")
+    BatchPurchaseItem malformed;
+    @Schema(description = "Time taken to ingest the upload in milliseconds",requiredMode = Schema.RequiredMode.REQUIRED)
+    long elapsedMillis;
+    @Schema(description = "Ingestion throughput in purchases per second",requiredMode = Schema.RequiredMode.REQUIRED)
+    double purchasesPerSecond;
+}
@@ -0,0 +1,113 @@
+package com.example.wex.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point money arithmetic. Amounts are longs of cents and exchange rates are longs scaled by 10^6, the
+ * precision rates are stored with, so converting an amount is an integer multiplication with exact HALF_UP
+ * rounding rather than a round trip through double and BigDecimal.
+ */
+public final class Money {
+    public static final int AMOUNT_SCALE = 2;
+    public static final int RATE_SCALE = 6;
+    private static final long RATE_UNIT = 1_000_000L;
+    private static final int MAX_FAST_PARSE_DIGITS = 16;
+
+    private Money() {
+    }
+
+    /**
+     * Converts an amount in cents at the given scaled rate, rounding the result HALF_UP to cents.
+     */
+    public static long convert(long cents, long scaledRate) {
+        long high = Math.multiplyHigh(cents, scaledRate);
+        long product = cents * scaledRate;
+        if ((high == 0 && product >= 0) || (high == -1 && product < 0)) {
+            return divideHalfUp(product, RATE_UNIT);
+        }
+        return toCents(toAmount(cents).multiply(toRate(scaledRate)));
+    }
+
+    /**
+     * Parses a plain decimal amount such as {@code 553.23} straight into cents, rounding HALF_UP. Anything else
+     * is left to {@link BigDecimal}, which also rejects malformed amounts with a {@link NumberFormatException}.
+     */
+    public static long parseCents(String amount) {
+        int length = amount.length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (amount.charAt(0) == '-' || amount.charAt(0) == '+')) {
+            negative = amount.charAt(0) == '-';
+            i++;
+        }
+
+        long units = 0;
+        int unitDigits = 0;
+        for (; i < length && isDigit(amount.charAt(i)); i++, unitDigits++) {
+            if (unitDigits == MAX_FAST_PARSE_DIGITS) {
+                return toCents(new BigDecimal(amount));
+            }
+            units = units * 10 + (amount.charAt(i) - '0');
+        }
+
+        long fraction = 0;
+        int fractionDigits = 0;
+        boolean roundUp = false;
+        if (i < length && amount.charAt(i) == '.') {
+            for (i++; i < length && isDigit(amount.charAt(i)); i++, fractionDigits++) {
+                if (fractionDigits < AMOUNT_SCALE) {
+                    fraction = fraction * 10 + (amount.charAt(i) - '0');
+                } else if (fractionDigits == AMOUNT_SCALE) {
+                    roundUp = amount.charAt(i) >= '5';
+                }
+            }
+        }
+        if (i != length || unitDigits + fractionDigits == 0) {
+            return toCents(new BigDecimal(amount));
+        }
+
+        for (int scale = Math.min(fractionDigits, AMOUNT_SCALE); scale < AMOUNT_SCALE; scale++) {
+            fraction *= 10;
+        }
+        long cents = units * 100 + fraction + (roundUp ? 1 : 0);
+        return negative ? -cents : cents;
+    }
+
+    public static long toCents(BigDecimal amount) {
+        return toCents(amount, RoundingMode.HALF_UP);
+    }
+
+    public static long toCents(BigDecimal amount, RoundingMode roundingMode) {
+        return amount.setScale(AMOUNT_SCALE, roundingMode).unscaledValue().longValueExact();
+    }
+
+    public static long toScaledRate(BigDecimal rate) {
+        return rate.setScale(RATE_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal toAmount(long cents) {
+        return BigDecimal.valueOf(cents, AMOUNT_SCALE);
+    }
+
+    /**
+     * The scaled rate as a BigDecimal without the padding zeros, so 20518000 reads as 20.518.
+     */
+    public static BigDecimal toRate(long scaledRate) {
+        var rate = BigDecimal.valueOf(scaledRate, RATE_SCALE).stripTrailingZeros();
+        return rate.scale() < 0 ? rate.setScale(0) : rate;
+    }
+
+    private static long divideHalfUp(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        long remainder = Math.abs(dividend % divisor);
+        if (remainder * 2 >= divisor) {
+            quotient += Long.signum(dividend);
+        }
+        return quotient;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.wex.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+public class MultiCurrencyResponse {
+    @Schema(description = "Transaction Id of purchase",requiredMode = Schema.RequiredMode.REQUIRED)
+    Long transactionId;
+    @Schema(description = "Description of purchase",requiredMode = Schema.RequiredMode.REQUIRED)
+    String description;
+    @Schema(description = "Date of purchase",requiredMode = Schema.RequiredMode.REQUIRED)
+    LocalDateTime trxDate;
+    @Schema(description = "Original purchase amount in USD",requiredMode = Schema.RequiredMode.REQUIRED)
+    BigDecimal originalAmt;
+    @Schema(description = "Purchase details keyed by requested Country-Currency, in request order",
+            requiredMode = Schema.RequiredMode.REQUIRED)
+    Map<String, PurchaseResponse> conversions;
+    @Schema(description = "Requested Country-Currency pairs with no exchange rate within the lookback window",
+            requiredMode = Schema.RequiredMode.REQUIRED)
+    List<String> missingRates;
+}
@@ -0,0 +1,32 @@
+package com.example.wex.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+@Data
+@Builder
+public class PurchaseAggregate {
+    @Schema(description = "First day of the day or month aggregated",requiredMode = Schema.RequiredMode.REQUIRED)
+    LocalDate periodStart;
+    @Schema(description = "Number of purchases",requiredMode = Schema.RequiredMode.REQUIRED)
+    long purchaseCount;
+    @Schema(description = "Total purchase amount in USD",requiredMode = Schema.RequiredMode.REQUIRED)
+    BigDecimal totalAmt;
+    @Schema(description = "Smallest purchase amount in USD",requiredMode = Schema.RequiredMode.REQUIRED)
+    BigDecimal minAmt;
+    @Schema(description = "Largest purchase amount in USD",requiredMode = Schema.RequiredMode.REQUIRED)
+    BigDecimal maxAmt;
+    @Schema(description = "Total in requested currency, each day converted at its exchange rate. " +
+            "Absent when no currency was requested or no day of the period has a rate")
+    BigDecimal convertedTotalAmt;
+    @Schema(description = "Smallest purchase amount in requested currency")
+    BigDecimal convertedMinAmt;
+    @Schema(description = "Largest purchase amount in requested currency")
+    BigDecimal convertedMaxAmt;
+    @Schema(description = "True when fiscaldata was unavailable and a last known good exchange rate was used")
+    boolean stale;
+}
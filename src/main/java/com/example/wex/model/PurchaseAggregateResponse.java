@@ -0,0 +1,18 @@
+package com.example.wex.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Data
+@Builder
+public class PurchaseAggregateResponse {
+    @Schema(description = "Aggregates of each day or month with purchases, in date order",requiredMode = Schema.RequiredMode.REQUIRED)
+    List<PurchaseAggregate> aggregates;
+    @Schema(description = "Days with purchases but no exchange rate within the lookback window, left out of converted amounts",
+            requiredMode = Schema.RequiredMode.REQUIRED)
+    List<LocalDate> missingRateDays;
+}
@@ -0,0 +1,53 @@
+package com.example.wex.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * A purchase converted into one of the hot currencies, stored so it can be served without resolving a rate.
+ * Amounts and rates are fixed point as in {@link Money}.
+ */
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_purchase_conversion_trx_currency",
+        columnNames = {"trx_id", "country_currency"}))
+public class PurchaseConversion {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "purchase_conversion_seq")
+    @SequenceGenerator(name = "purchase_conversion_seq", sequenceName = "purchase_conversion_seq", allocationSize = 50)
+    long id;
+
+    @Column(name = "trx_id", nullable = false)
+    long trxId;
+
+    @ToString.Exclude
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "trx_id", insertable = false, updatable = false)
+    PurchaseTrx purchase;
+
+    @Column(nullable = false, length = 64)
+    String countryCurrency;
+
+    @Column(nullable = false)
+    long scaledRate;
+
+    @Column(nullable = false)
+    long convertedCents;
+}
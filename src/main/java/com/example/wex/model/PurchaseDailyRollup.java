@@ -0,0 +1,37 @@
+package com.example.wex.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * Count, total, min and max in cents of the purchases made on one day, kept up to date as purchases are
+ * written so spend over a range reads one row per day instead of every purchase.
+ */
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PurchaseDailyRollup {
+    @Id
+    LocalDate rollupDate;
+
+    @Column(nullable = false)
+    long purchaseCount;
+
+    @Column(nullable = false)
+    long totalCents;
+
+    @Column(nullable = false)
+    long minCents;
+
+    @Column(nullable = false)
+    long maxCents;
+}
@@ -0,0 +1,29 @@
+package com.example.wex.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+
+public record PurchaseFilter(LocalDateTime from, LocalDateTime to, BigDecimal minAmount, BigDecimal maxAmount) {
+    private static final LocalDateTime EARLIEST = LocalDateTime.of(1900, 1, 1, 0, 0);
+    private static final LocalDateTime LATEST = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
+    public PurchaseFilter {
+        from = from != null ? from : EARLIEST;
+        to = to != null ? to : LATEST;
+    }
+
+    /**
+     * Lower amount bound in cents, rounded up so a purchase below the requested amount never matches.
+     */
+    public Long minCents() {
+        return minAmount != null ? Money.toCents(minAmount, RoundingMode.CEILING) : null;
+    }
+
+    /**
+     * Upper amount bound in cents, rounded down so a purchase above the requested amount never matches.
+     */
+    public Long maxCents() {
+        return maxAmount != null ? Money.toCents(maxAmount, RoundingMode.FLOOR) : null;
+    }
+}
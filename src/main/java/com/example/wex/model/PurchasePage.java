@@ -0,0 +1,19 @@
+package com.example.wex.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+public class PurchasePage {
+    @Schema(description = "Purchases ordered by transaction date and id",requiredMode = Schema.RequiredMode.REQUIRED)
+    List<PurchaseTrx> purchases;
+    @Schema(description = "afterDate to request the next page with, absent on the last page")
+    LocalDateTime nextAfterDate;
+    @Schema(description = "afterId to request the next page with, absent on the last page")
+    Long nextAfterId;
+}
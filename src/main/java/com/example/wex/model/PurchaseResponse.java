@@ -10,6 +10,8 @@ import java.time.LocalDateTime;
 @Data
 @Builder
 public class PurchaseResponse {
+    @Schema(description = "Transaction Id of purchase",requiredMode = Schema.RequiredMode.REQUIRED)
+    Long transactionId;
     @Schema(description = "Description of purchase",requiredMode = Schema.RequiredMode.REQUIRED)
     String description;
     @Schema(description = "Date of purchase",requiredMode = Schema.RequiredMode.REQUIRED)
@@ -17,7 +19,9 @@ public class PurchaseResponse {
     @Schema(description = "Original purchase amount in USD",requiredMode = Schema.RequiredMode.REQUIRED)
     BigDecimal originalAmt;
     @Schema(description = "Exchange rate of requested currency",requiredMode = Schema.RequiredMode.REQUIRED)
-    Double exchangeRate;
+    BigDecimal exchangeRate;
     @Schema(description = "Purchase amount in requested currency",requiredMode = Schema.RequiredMode.REQUIRED)
     BigDecimal convertedAmt;
+    @Schema(description = "True when fiscaldata was unavailable and the last known good exchange rate was used")
+    boolean stale;
 }
@@ -1,26 +1,47 @@
 package com.example.wex.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.Immutable;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
+/**
+ * A purchase never changes once written, so it is mapped immutable and kept in a read-only second-level
+ * cache region.
+ */
 @Entity
+@Immutable
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_ONLY)
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
+@Table(indexes = {
+        @Index(name = "idx_purchase_trx_date_id", columnList = "transaction_date, trx_id"),
+        @Index(name = "idx_purchase_trx_amount", columnList = "amount_in_cents")
+})
 public class PurchaseTrx {
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "purchase_trx_seq")
+    @SequenceGenerator(name = "purchase_trx_seq", sequenceName = "purchase_trx_seq", allocationSize = 50)
     long trxId;
 
     @Column(length = 50)
@@ -29,6 +50,12 @@ public class PurchaseTrx {
     @Column(nullable = false)
     LocalDateTime transactionDate;
 
+    @JsonIgnore
     @Column(nullable = false)
-    BigDecimal amountInUSD;
+    long amountInCents;
+
+    @JsonProperty("amountInUSD")
+    public BigDecimal getAmountInUSD() {
+        return Money.toAmount(amountInCents);
+    }
 }
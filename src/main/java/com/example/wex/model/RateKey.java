@@ -0,0 +1,10 @@
+package com.example.wex.model;
+
+import java.time.LocalDate;
+
+public record RateKey(String country, String currency, LocalDate recordDate) {
+
+    public String countryCurrency() {
+        return country + '-' + currency;
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.wex.model;
+
+/**
+ * Exchange rate resolved for a purchase, scaled as in {@link Money}. A stale quote is the last known good rate,
+ * served because fiscaldata could not be reached.
+ */
+public record RateQuote(long scaledRate, boolean stale) {
+    public static RateQuote fresh(long scaledRate) {
+        return new RateQuote(scaledRate, false);
+    }
+
+    public static RateQuote stale(long scaledRate) {
+        return new RateQuote(scaledRate, true);
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.wex.repository;
+
+import com.example.wex.model.ExchangeRate;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ExchangeRateRepository extends JpaRepository<ExchangeRate, Long> {
+    @Query("select max(r.recordDate) from ExchangeRate r")
+    Optional<LocalDate> findLatestRecordDate();
+
+    List<ExchangeRate> findByRecordDateAfter(LocalDate recordDate);
+}
@@ -0,0 +1,45 @@
+package com.example.wex.repository;
+
+import com.example.wex.model.IdempotencyKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface IdempotencyKeyRepository extends JpaRepository<IdempotencyKey, String> {
+    /**
+     * Claims a key with a row that has no transaction id yet. Fails with a duplicate key when the key is
+     * already stored, where {@code save} would merge over it. The insert is HQL rather than native SQL so that
+     * Hibernate invalidates only the IdempotencyKey cache region instead of the whole second-level cache.
+     */
+    @Transactional
+    @Modifying
+    @Query("insert into IdempotencyKey (idempotencyKey, createdAt) values (:idempotencyKey, :createdAt)")
+    int claim(@Param("idempotencyKey") String idempotencyKey, @Param("createdAt") LocalDateTime createdAt);
+
+    /**
+     * Records the transaction id of the claim made at {@code createdAt}. Returns 0 when that claim is gone.
+     */
+    @Transactional
+    @Modifying
+    @Query("""
+            update IdempotencyKey k set k.trxId = :trxId
+            where k.idempotencyKey = :idempotencyKey and k.createdAt = :createdAt""")
+    int complete(@Param("idempotencyKey") String idempotencyKey, @Param("createdAt") LocalDateTime createdAt,
+                 @Param("trxId") long trxId);
+
+    @Transactional
+    @Modifying
+    @Query("delete from IdempotencyKey k where k.idempotencyKey = :idempotencyKey and k.createdAt = :createdAt")
+    int deleteClaim(@Param("idempotencyKey") String idempotencyKey, @Param("createdAt") LocalDateTime createdAt);
+
+    @Transactional
+    @Modifying
+    @Query("delete from IdempotencyKey k where k.createdAt < :cutoff")
+    int deleteCreatedBefore(@Param("cutoff") LocalDateTime cutoff);
+}
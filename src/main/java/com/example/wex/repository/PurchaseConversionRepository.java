@@ -0,0 +1,25 @@
+package com.example.wex.repository;
+
+import com.example.wex.model.PurchaseConversion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface PurchaseConversionRepository extends JpaRepository<PurchaseConversion, Long> {
+    /**
+     * The conversion and its purchase in a single read on the (trx_id, country_currency) unique index.
+     */
+    @Query("""
+            select c from PurchaseConversion c join fetch c.purchase
+            where c.trxId = :trxId and c.countryCurrency = :countryCurrency""")
+    Optional<PurchaseConversion> findWithPurchase(@Param("trxId") long trxId,
+                                                  @Param("countryCurrency") String countryCurrency);
+
+    List<PurchaseConversion> findByTrxIdIn(Collection<Long> trxIds);
+}
@@ -0,0 +1,49 @@
+package com.example.wex.repository;
+
+import com.example.wex.model.PurchaseDailyRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface PurchaseDailyRollupRepository extends JpaRepository<PurchaseDailyRollup, LocalDate> {
+    /**
+     * Adds a day's purchases to its rollup in place, so concurrent writers never lose each other's updates.
+     * Returns 0 when the day has no rollup yet.
+     */
+    @Modifying
+    @Query("""
+            update PurchaseDailyRollup r
+            set r.purchaseCount = r.purchaseCount + :purchaseCount,
+                r.totalCents = r.totalCents + :totalCents,
+                r.minCents = case when :minCents < r.minCents then :minCents else r.minCents end,
+                r.maxCents = case when :maxCents > r.maxCents then :maxCents else r.maxCents end
+            where r.rollupDate = :rollupDate""")
+    int increment(@Param("rollupDate") LocalDate rollupDate, @Param("purchaseCount") long purchaseCount,
+                  @Param("totalCents") long totalCents, @Param("minCents") long minCents,
+                  @Param("maxCents") long maxCents);
+
+    /**
+     * Inserts the first rollup of a day. Unlike {@code save}, which merges an entity with an assigned id over
+     * whatever row is there, this fails with a duplicate key when another writer inserted the day first.
+     * The insert is HQL so it invalidates only cached rollups, not the whole second-level cache.
+     */
+    @Modifying
+    @Query("""
+            insert into PurchaseDailyRollup (rollupDate, purchaseCount, totalCents, minCents, maxCents)
+            values (:rollupDate, :purchaseCount, :totalCents, :minCents, :maxCents)""")
+    int insert(@Param("rollupDate") LocalDate rollupDate, @Param("purchaseCount") long purchaseCount,
+               @Param("totalCents") long totalCents, @Param("minCents") long minCents,
+               @Param("maxCents") long maxCents);
+
+    @Modifying
+    @Query("delete from PurchaseDailyRollup r where r.rollupDate >= :from and r.rollupDate <= :to")
+    int deleteBetween(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    List<PurchaseDailyRollup> findByRollupDateBetweenOrderByRollupDate(LocalDate from, LocalDate to);
+}
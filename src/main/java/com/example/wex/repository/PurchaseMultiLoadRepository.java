@@ -0,0 +1,14 @@
+package com.example.wex.repository;
+
+import com.example.wex.model.PurchaseTrx;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface PurchaseMultiLoadRepository {
+    /**
+     * Loads purchases by id, taking those already in the second-level cache from there and only querying
+     * the database for the rest. Ids with no purchase are left out.
+     */
+    List<PurchaseTrx> findAllByIdCached(Collection<Long> trxIds);
+}
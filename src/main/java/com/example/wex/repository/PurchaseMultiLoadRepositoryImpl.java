@@ -0,0 +1,29 @@
+package com.example.wex.repository;
+
+import com.example.wex.model.PurchaseTrx;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Session;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+class PurchaseMultiLoadRepositoryImpl implements PurchaseMultiLoadRepository {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<PurchaseTrx> findAllByIdCached(Collection<Long> trxIds) {
+        return entityManager.unwrap(Session.class)
+                .byMultipleIds(PurchaseTrx.class)
+                .enableOrderedReturn(false)
+                .multiLoad(new ArrayList<>(trxIds))
+                .stream()
+                .filter(Objects::nonNull)
+                .toList();
+    }
+}
@@ -1,9 +1,114 @@
 package com.example.wex.repository;
 
+import com.example.wex.model.PurchaseDailyRollup;
 import com.example.wex.model.PurchaseTrx;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
 @Repository
-public interface PurchaseRepository extends JpaRepository<PurchaseTrx, Long> {
+public interface PurchaseRepository extends JpaRepository<PurchaseTrx, Long>, PurchaseMultiLoadRepository {
+    String QUERY_CACHE_REGION = "purchase-queries";
+
+    /**
+     * Seeks past the (afterDate, afterId) cursor on the (transaction_date, trx_id) index instead of skipping
+     * an OFFSET, so every page costs the same however deep into the table it is.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = QUERY_CACHE_REGION)
+    })
+    @Query("""
+            select t from PurchaseTrx t
+            where (t.transactionDate > :afterDate or (t.transactionDate = :afterDate and t.trxId > :afterId))
+              and t.transactionDate >= :from and t.transactionDate <= :to
+              and (:minCents is null or t.amountInCents >= :minCents)
+              and (:maxCents is null or t.amountInCents <= :maxCents)
+            order by t.transactionDate, t.trxId""")
+    List<PurchaseTrx> findPageAfter(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to,
+                                    @Param("minCents") Long minCents, @Param("maxCents") Long maxCents,
+                                    @Param("afterDate") LocalDateTime afterDate, @Param("afterId") long afterId,
+                                    Pageable pageable);
+
+    /**
+     * Purchases made from {@code from}, or at any time when it is null, after {@code afterId} in id order, missing
+     * a materialized conversion into one of {@code hotCurrencies}. Conversions into currencies no longer hot are
+     * not counted.
+     */
+    @Query("""
+            select t from PurchaseTrx t
+            where t.trxId > :afterId
+              and (:from is null or t.transactionDate >= :from)
+              and (select count(c) from PurchaseConversion c
+                   where c.trxId = t.trxId and c.countryCurrency in :hotCurrencies) < :hotCurrencyCount
+            order by t.trxId""")
+    List<PurchaseTrx> findMissingConversionsAfter(@Param("from") LocalDateTime from, @Param("afterId") long afterId,
+                                                  @Param("hotCurrencies") Collection<String> hotCurrencies,
+                                                  @Param("hotCurrencyCount") long hotCurrencyCount, Pageable pageable);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("""
+            select t from PurchaseTrx t
+            where t.transactionDate >= :from and t.transactionDate <= :to
+              and (:minCents is null or t.amountInCents >= :minCents)
+              and (:maxCents is null or t.amountInCents <= :maxCents)
+            order by t.transactionDate, t.trxId""")
+    Stream<PurchaseTrx> streamAll(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to,
+                                  @Param("minCents") Long minCents, @Param("maxCents") Long maxCents);
+
+    /**
+     * Every purchase in [from, to) off a database cursor, bypassing the second-level cache so an export does not
+     * evict the purchases that are actually being read.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_MODE, value = "IGNORE")
+    })
+    @Query("""
+            select t from PurchaseTrx t
+            where t.transactionDate >= :from and t.transactionDate < :to
+            order by t.transactionDate, t.trxId""")
+    Stream<PurchaseTrx> streamRange(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    /**
+     * The rest of a {@link #streamRange} after the (afterDate, afterId) cursor, for an export that stopped
+     * partway through a range.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_MODE, value = "IGNORE")
+    })
+    @Query("""
+            select t from PurchaseTrx t
+            where (t.transactionDate > :afterDate or (t.transactionDate = :afterDate and t.trxId > :afterId))
+              and t.transactionDate < :to
+            order by t.transactionDate, t.trxId""")
+    Stream<PurchaseTrx> streamRangeAfter(@Param("afterDate") LocalDateTime afterDate, @Param("afterId") long afterId,
+                                         @Param("to") LocalDateTime to);
+
+    /**
+     * Rollups of every day in [from, to) recomputed from the purchases themselves.
+     */
+    @Query("""
+            select new com.example.wex.model.PurchaseDailyRollup(cast(t.transactionDate as LocalDate),
+                count(t), sum(t.amountInCents), min(t.amountInCents), max(t.amountInCents))
+            from PurchaseTrx t
+            where t.transactionDate >= :from and t.transactionDate < :to
+            group by cast(t.transactionDate as LocalDate)""")
+    List<PurchaseDailyRollup> summarizeDays(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
 }
@@ -0,0 +1,95 @@
+package com.example.wex.service;
+
+import com.example.wex.model.RateKey;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Bounded, expiring cache of exchange rates, scaled as in {@link com.example.wex.model.Money}, keyed on
+ * country, currency and record date.
+ * Published rates for a past date never change, so only successful lookups are cached.
+ * Every rate put here is also kept, without expiry, as a last known good rate of its country-currency so it
+ * can still be served, flagged as stale, while fiscaldata is unavailable. Like the index, the fallback for a
+ * date is the latest rate kept on or before it within the lookback window, not only a rate kept for that
+ * exact date; the latest {@code max-size} dates of each country-currency are kept.
+ */
+@Component
+public class ExchangeRateCache implements MeterBinder {
+    private final Cache<RateKey, Long> cache;
+    private final Map<String, NavigableMap<LocalDate, Long>> lastKnownGood = new ConcurrentHashMap<>();
+    private final long maxSize;
+    private final int lookbackMonths;
+
+    public ExchangeRateCache(@Value("${fiscaldata.exchangerate.cache.max-size:10000}") long maxSize,
+                             @Value("${fiscaldata.exchangerate.cache.ttl:PT24H}") Duration ttl,
+                             @Value("${fiscaldata.exchangerate.lookback-months:6}") int lookbackMonths) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.maxSize = maxSize;
+        this.lookbackMonths = lookbackMonths;
+    }
+
+    public Long get(RateKey key) {
+        return cache.getIfPresent(key);
+    }
+
+    public void put(RateKey key, long exchangeRate) {
+        cache.put(key, exchangeRate);
+        var rates = lastKnownGood.computeIfAbsent(key.countryCurrency(), countryCurrency -> new ConcurrentSkipListMap<>());
+        rates.put(key.recordDate(), exchangeRate);
+        if (rates.size() > maxSize) {
+            rates.pollFirstEntry();
+        }
+    }
+
+    /**
+     * The latest rate kept for {@code key}'s country-currency on or before its date and no more than the
+     * lookback window before it, or null when there is none.
+     */
+    public Long getLastKnownGood(RateKey key) {
+        var rates = lastKnownGood.get(key.countryCurrency());
+        if (rates == null) {
+            return null;
+        }
+        var floor = rates.floorEntry(key.recordDate());
+        if (floor == null || floor.getKey().isBefore(key.recordDate().minusMonths(lookbackMonths))) {
+            return null;
+        }
+        return floor.getValue();
+    }
+
+    public long size() {
+        cache.cleanUp();
+        return cache.estimatedSize();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "exchangeRates");
+        Gauge.builder("cache.size", lastKnownGood, rates -> rates.values().stream().mapToInt(Map::size).sum())
+                .tag("cache", "exchangeRatesLastKnownGood")
+                .description("Number of last known good exchange rates kept for the stale fallback")
+                .register(registry);
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.wex.service;
+
+import com.example.wex.model.ExchangeRatePage;
+import com.example.wex.model.ExchangeRateRecord;
+import com.example.wex.model.RateKey;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriBuilder;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Client for the fiscaldata rates_of_exchange api. Responses are read as bytes and parsed token by token
+ * straight into {@link ExchangeRateRecord}s, without building an intermediate json tree. Every call goes through
+ * {@link ExchangeRateResilience}. Timeouts, transient failures and calls the circuit or bulkhead refused surface as
+ * an {@link ExchangeRateUnavailableException}; any other 4xx is a bad request and surfaces as the
+ * {@link org.springframework.web.reactive.function.client.WebClientResponseException} it is.
+ */
+@Component
+public class ExchangeRateClient {
+    private static final String RESPONSE_FIELDS = "record_date,country_currency_desc,exchange_rate";
+    private static final String REQ_FILTER_LTE = "record_date:lte:";
+    private static final String REQ_FILTER_GTE = "record_date:gte:";
+    private static final String REQ_FILTER_GT = "record_date:gt:";
+    private static final String REQ_FILTER_CURRENCY = "country_currency_desc:eq:";
+
+    private final WebClient webClient;
+    private final ObjectMapper objectMapper;
+    private final ObjectReader recordReader;
+    private final ExchangeRateResilience resilience;
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary responseSize;
+    private final int lookbackMonths;
+    private final ConcurrentMap<RateKey, Mono<ExchangeRateRecord>> inFlight = new ConcurrentHashMap<>();
+
+    public ExchangeRateClient(WebClient exchangeRateWebClient, ObjectMapper objectMapper,
+                              ExchangeRateResilience resilience, MeterRegistry meterRegistry,
+                              @Value("${fiscaldata.exchangerate.lookback-months:6}") int lookbackMonths) {
+        this.webClient = exchangeRateWebClient;
+        this.objectMapper = objectMapper;
+        this.recordReader = objectMapper.readerFor(ExchangeRateRecord.class);
+        this.resilience = resilience;
+        this.meterRegistry = meterRegistry;
+        this.responseSize = DistributionSummary.builder("fiscaldata.response.size")
+                .description("Size of fiscaldata api response bodies")
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.lookbackMonths = lookbackMonths;
+    }
+
+    /**
+     * Latest rate recorded on or before the key's date and within the lookback window, empty when there is none.
+     * Concurrent callers asking for the same key share a single upstream call and its result.
+     */
+    public Mono<ExchangeRateRecord> latestRate(RateKey key) {
+        return Mono.defer(() -> inFlight.computeIfAbsent(key, this::sharedLatestRate));
+    }
+
+    public ExchangeRateRecord fetchLatestRate(RateKey key) throws IOException {
+        return blockUnwrapped(latestRate(key));
+    }
+
+    public ExchangeRatePage fetchRatesRecordedAfter(LocalDate recordDate, int pageNumber, int pageSize) throws IOException {
+        var body = blockUnwrapped(guarded("ratesRecordedAfter", webClient.get()
+                .uri(uriBuilder -> ratesUri(uriBuilder, REQ_FILTER_GT+recordDate, "record_date", pageNumber, pageSize))
+                .retrieve()
+                .bodyToMono(byte[].class)));
+        return body != null ? parsePage(body) : new ExchangeRatePage(List.of(), 0);
+    }
+
+    /**
+     * Rates of one country-currency pair recorded from {@code from} to {@code to} inclusive, oldest first.
+     */
+    public ExchangeRatePage fetchRatesBetween(String countryCurrency, LocalDate from, LocalDate to, int pageSize) throws IOException {
+        var filter = String.join(",",
+                REQ_FILTER_GTE+from, REQ_FILTER_LTE+to, REQ_FILTER_CURRENCY+countryCurrency);
+        var body = blockUnwrapped(guarded("ratesBetween", webClient.get()
+                .uri(uriBuilder -> ratesUri(uriBuilder, filter, "record_date", 1, pageSize))
+                .retrieve()
+                .bodyToMono(byte[].class)));
+        return body != null ? parsePage(body) : new ExchangeRatePage(List.of(), 0);
+    }
+
+    private <T> T blockUnwrapped(Mono<T> result) throws IOException {
+        try {
+            return result.block();
+        } catch (RuntimeException e) {
+            if (Exceptions.unwrap(e) instanceof IOException ioe) {
+                throw ioe;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Runs an upstream call through the resilience layer, timing it as a whole, retries included, under
+     * {@code fiscaldata.requests} and recording the size of the body it returns.
+     */
+    private Mono<byte[]> guarded(String operation, Mono<byte[]> upstreamCall) {
+        return Mono.defer(() -> {
+            var sample = Timer.start(meterRegistry);
+            return resilience.guard(upstreamCall)
+                    .doOnNext(body -> responseSize.record(body.length))
+                    .doOnSuccess(body -> sample.stop(upstreamTimer(operation, "SUCCESS", "none")))
+                    .doOnError(e -> sample.stop(upstreamTimer(operation, "ERROR", e.getClass().getSimpleName())))
+                    .onErrorMap(ExchangeRateClient::isUnavailable, ExchangeRateUnavailableException::new);
+        });
+    }
+
+    private static boolean isUnavailable(Throwable e) {
+        return ExchangeRateResilience.isTransientFailure(e)
+                || e instanceof CallNotPermittedException
+                || e instanceof BulkheadFullException;
+    }
+
+    private Timer upstreamTimer(String operation, String outcome, String exception) {
+        return Timer.builder("fiscaldata.requests")
+                .description("Calls to the fiscaldata api")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .tag("exception", exception)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private Mono<ExchangeRateRecord> sharedLatestRate(RateKey key) {
+        return guarded("latestRate", requestLatestRate(key))
+                .flatMap(body -> Mono.fromCallable(() -> firstRecord(parsePage(body))))
+                .doFinally(signal -> inFlight.remove(key))
+                .cache();
+    }
+
+    private Mono<byte[]> requestLatestRate(RateKey key) {
+        var filter = String.join(",",
+                REQ_FILTER_LTE+key.recordDate(), REQ_FILTER_GTE+key.recordDate().minusMonths(lookbackMonths),
+                REQ_FILTER_CURRENCY+key.countryCurrency());
+        return webClient.get()
+                .uri(uriBuilder -> ratesUri(uriBuilder, filter, "-record_date", 1, 1))
+                .retrieve()
+                .bodyToMono(byte[].class);
+    }
+
+    private URI ratesUri(UriBuilder uriBuilder, String filter, String sort, int pageNumber, int pageSize) {
+        return uriBuilder
+                .queryParam("format","json")
+                .queryParam("fields",RESPONSE_FIELDS)
+                .queryParam("filter",filter)
+                .queryParam("sort",sort)
+                .queryParam("page[number]",pageNumber)
+                .queryParam("page[size]",pageSize)
+                .build();
+    }
+
+    private ExchangeRateRecord firstRecord(ExchangeRatePage page) {
+        return page.data().isEmpty() ? null : page.data().get(0);
+    }
+
+    public ExchangeRatePage parsePage(byte[] body) throws IOException {
+        try (var parser = objectMapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected a fiscaldata response object");
+            }
+            List<ExchangeRateRecord> data = List.of();
+            int totalPages = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                var field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case "data" -> data = readRecords(parser);
+                    case "meta" -> totalPages = readTotalPages(parser);
+                    default -> parser.skipChildren();
+                }
+            }
+            return new ExchangeRatePage(data, totalPages);
+        }
+    }
+
+    private List<ExchangeRateRecord> readRecords(JsonParser parser) throws IOException {
+        List<ExchangeRateRecord> records = new ArrayList<>();
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return records;
+        }
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            records.add(recordReader.readValue(parser));
+        }
+        return records;
+    }
+
+    private int readTotalPages(JsonParser parser) throws IOException {
+        int totalPages = 0;
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return totalPages;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.getCurrentName();
+            parser.nextToken();
+            if ("total-pages".equals(field)) {
+                totalPages = parser.getValueAsInt();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return totalPages;
+    }
+}
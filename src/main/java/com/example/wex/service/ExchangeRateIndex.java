@@ -0,0 +1,113 @@
+package com.example.wex.service;
+
+import com.example.wex.model.ExchangeRate;
+import com.example.wex.model.Money;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory index of the locally stored exchange rates. Each country-currency pair keeps its
+ * rates as parallel primitive arrays sorted by epoch day, so finding the latest rate on or
+ * before a purchase date is a binary search that allocates nothing.
+ */
+@Component
+public class ExchangeRateIndex {
+    public static final long NO_RATE = -1L;
+
+    private final int lookbackMonths;
+
+    private volatile Map<String, RateSeries> seriesByCurrency = Map.of();
+
+    public ExchangeRateIndex(@Value("${fiscaldata.exchangerate.lookback-months:6}") int lookbackMonths) {
+        this.lookbackMonths = lookbackMonths;
+    }
+
+    public void load(List<ExchangeRate> rates) {
+        Map<String, RateSeries> loaded = new HashMap<>();
+        rates.stream()
+                .collect(Collectors.groupingBy(ExchangeRate::getCountryCurrencyDesc))
+                .forEach((countryCurrency, currencyRates) -> loaded.put(countryCurrency, RateSeries.of(currencyRates)));
+        seriesByCurrency = loaded;
+    }
+
+    /**
+     * Returns the latest rate, scaled as in {@link Money}, recorded on or before {@code purchaseDate} and no more
+     * than the configured number of months before it, or {@link #NO_RATE} when there is none.
+     */
+    public long floorRate(String countryCurrency, LocalDate purchaseDate) {
+        var series = seriesByCurrency.get(countryCurrency);
+        if (series == null) {
+            return NO_RATE;
+        }
+        return series.floor(purchaseDate.toEpochDay(), purchaseDate.minusMonths(lookbackMonths).toEpochDay());
+    }
+
+    /**
+     * Whether a rate recorded after {@code date} is indexed. Rates are published in record date order, so
+     * once one is, the floor rate for {@code date} can no longer change.
+     */
+    public boolean isSettled(String countryCurrency, LocalDate date) {
+        var series = seriesByCurrency.get(countryCurrency);
+        return series != null && series.epochDays()[series.epochDays().length - 1] > date.toEpochDay();
+    }
+
+    /**
+     * Oldest date not yet settled in all of {@code countryCurrencies}, which is the earliest of their latest record
+     * dates, or null when one of them has no rates indexed.
+     */
+    public LocalDate oldestUnsettledDate(Collection<String> countryCurrencies) {
+        var indexed = seriesByCurrency;
+        LocalDate oldest = null;
+        for (var countryCurrency : countryCurrencies) {
+            var series = indexed.get(countryCurrency);
+            if (series == null) {
+                return null;
+            }
+            var latest = LocalDate.ofEpochDay(series.epochDays()[series.epochDays().length - 1]);
+            if (oldest == null || latest.isBefore(oldest)) {
+                oldest = latest;
+            }
+        }
+        return oldest;
+    }
+
+    public int size() {
+        return seriesByCurrency.values().stream().mapToInt(series -> series.epochDays().length).sum();
+    }
+
+    private record RateSeries(int[] epochDays, long[] rates) {
+
+        static RateSeries of(List<ExchangeRate> currencyRates) {
+            var sorted = currencyRates.stream()
+                    .sorted(Comparator.comparing(ExchangeRate::getRecordDate))
+                    .toList();
+            var epochDays = new int[sorted.size()];
+            var rates = new long[sorted.size()];
+            for (int i = 0; i < sorted.size(); i++) {
+                epochDays[i] = (int) sorted.get(i).getRecordDate().toEpochDay();
+                rates[i] = Money.toScaledRate(sorted.get(i).getExchangeRate());
+            }
+            return new RateSeries(epochDays, rates);
+        }
+
+        long floor(long epochDay, long earliestEpochDay) {
+            int i = Arrays.binarySearch(epochDays, (int) epochDay);
+            if (i < 0) {
+                i = -i - 2;
+            }
+            if (i < 0 || epochDays[i] < earliestEpochDay) {
+                return NO_RATE;
+            }
+            return rates[i];
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.wex.service;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+import reactor.util.retry.RetryBackoffSpec;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Guards every call to the fiscaldata api. Each attempt has its own timeout and needs a bulkhead permit,
+ * transient failures are retried with jittered exponential backoff inside an overall deadline, and a circuit
+ * breaker fails calls fast while upstream keeps failing.
+ */
+@Component
+public class ExchangeRateResilience implements MeterBinder {
+    private final Duration attemptTimeout;
+    private final Duration deadline;
+    private final RetryBackoffSpec retrySpec;
+    private final BulkheadRegistry bulkheadRegistry;
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final Bulkhead bulkhead;
+    private final CircuitBreaker circuitBreaker;
+
+    public ExchangeRateResilience(@Value("${fiscaldata.exchangerate.resilience.attempt-timeout:PT2S}") Duration attemptTimeout,
+                                  @Value("${fiscaldata.exchangerate.resilience.deadline:PT6S}") Duration deadline,
+                                  @Value("${fiscaldata.exchangerate.resilience.max-retries:2}") int maxRetries,
+                                  @Value("${fiscaldata.exchangerate.resilience.retry-backoff:PT0.2S}") Duration retryBackoff,
+                                  @Value("${fiscaldata.exchangerate.resilience.retry-jitter:0.5}") double retryJitter,
+                                  @Value("${fiscaldata.exchangerate.resilience.max-concurrent-calls:20}") int maxConcurrentCalls,
+                                  @Value("${fiscaldata.exchangerate.resilience.failure-rate-threshold:50}") float failureRateThreshold,
+                                  @Value("${fiscaldata.exchangerate.resilience.sliding-window-size:20}") int slidingWindowSize,
+                                  @Value("${fiscaldata.exchangerate.resilience.minimum-calls:10}") int minimumCalls,
+                                  @Value("${fiscaldata.exchangerate.resilience.open-state-duration:PT30S}") Duration openStateDuration) {
+        this.attemptTimeout = attemptTimeout;
+        this.deadline = deadline;
+        this.retrySpec = Retry.backoff(maxRetries, retryBackoff)
+                .jitter(retryJitter)
+                .filter(ExchangeRateResilience::isTransientFailure)
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+        this.bulkheadRegistry = BulkheadRegistry.of(BulkheadConfig.custom()
+                .maxConcurrentCalls(maxConcurrentCalls)
+                .maxWaitDuration(Duration.ZERO)
+                .build());
+        this.bulkhead = bulkheadRegistry.bulkhead("fiscaldata");
+        this.circuitBreakerRegistry = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+                .failureRateThreshold(failureRateThreshold)
+                .slidingWindowSize(slidingWindowSize)
+                .minimumNumberOfCalls(minimumCalls)
+                .waitDurationInOpenState(openStateDuration)
+                .recordException(ExchangeRateResilience::isTransientFailure)
+                .ignoreExceptions(BulkheadFullException.class)
+                .build());
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker("fiscaldata");
+    }
+
+    public <T> Mono<T> guard(Mono<T> upstreamCall) {
+        return upstreamCall
+                .timeout(attemptTimeout)
+                .transformDeferred(BulkheadOperator.of(bulkhead))
+                .retryWhen(retrySpec)
+                .timeout(deadline)
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker));
+    }
+
+    public CircuitBreaker.State circuitState() {
+        return circuitBreaker.getState();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakerRegistry).bindTo(registry);
+        TaggedBulkheadMetrics.ofBulkheadRegistry(bulkheadRegistry).bindTo(registry);
+    }
+
+    /**
+     * Timeouts, connection failures, 5xx and 429 responses are worth another attempt and count against the
+     * circuit. Any other 4xx means the request itself is wrong and is returned to the caller as is.
+     */
+    static boolean isTransientFailure(Throwable e) {
+        if (e instanceof WebClientResponseException responseException) {
+            return responseException.getStatusCode().is5xxServerError()
+                    || responseException.getStatusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value();
+        }
+        return e instanceof TimeoutException || e instanceof WebClientRequestException;
+    }
+}
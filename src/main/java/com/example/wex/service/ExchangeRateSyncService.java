@@ -0,0 +1,98 @@
+package com.example.wex.service;
+
+import com.example.wex.model.ExchangeRate;
+import com.example.wex.model.ExchangeRateRecord;
+import com.example.wex.repository.ExchangeRateRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the local {@link ExchangeRate} table in step with the fiscaldata rates_of_exchange dataset.
+ * The whole dataset is paged in on startup and later syncs only pull records from
+ * {@code fiscaldata.exchangerate.sync.refetch-window} before the last synced record date on. Currencies are
+ * not all published at once, so a rate published late for a record date already synced is picked up by a
+ * later sync; rates already stored are skipped. Every sync reloads the {@link ExchangeRateIndex} from the table.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "fiscaldata.exchangerate.sync.enabled", havingValue = "true", matchIfMissing = true)
+public class ExchangeRateSyncService {
+    @Value("${fiscaldata.exchangerate.sync.page-size:1000}")
+    private int pageSize;
+
+    @Value("${fiscaldata.exchangerate.sync.start-date:2001-01-01}")
+    private String startDate;
+
+    @Value("${fiscaldata.exchangerate.sync.refetch-window:P6M}")
+    private Period refetchWindow;
+
+    private final ExchangeRateRepository rateRepository;
+    private final ExchangeRateIndex rateIndex;
+    private final ExchangeRateClient exchangeRateClient;
+
+    /**
+     * Runs ahead of the other ready listeners, so the index is loaded before {@link ExchangeRateWarmup} reads it.
+     */
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener(ApplicationReadyEvent.class)
+    public void preload() {
+        sync();
+    }
+
+    @Scheduled(initialDelayString = "${fiscaldata.exchangerate.sync.interval:PT6H}",
+            fixedDelayString = "${fiscaldata.exchangerate.sync.interval:PT6H}")
+    public void sync() {
+        var lastSynced = rateRepository.findLatestRecordDate()
+                .map(recordDate -> recordDate.minus(refetchWindow))
+                .orElseGet(() -> LocalDate.parse(startDate).minusDays(1));
+        try {
+            var stored = rateRepository.findByRecordDateAfter(lastSynced).stream()
+                    .map(ExchangeRateSyncService::key)
+                    .collect(Collectors.toSet());
+            List<ExchangeRate> rates = new ArrayList<>();
+            int totalPages = 1;
+            for (int page = 1; page <= totalPages; page++) {
+                var ratePage = exchangeRateClient.fetchRatesRecordedAfter(lastSynced, page, pageSize);
+                totalPages = ratePage.totalPages();
+                toExchangeRates(ratePage.data()).stream()
+                        .filter(rate -> stored.add(key(rate)))
+                        .forEach(rates::add);
+            }
+            // saved in one go so a failed page never leaves a record date half synced
+            rateRepository.saveAll(rates);
+            log.info("Synced {} exchange rates recorded after {}", rates.size(), lastSynced);
+        } catch (Exception e) {
+            log.warn("Exchange rate sync after {} failed: {}", lastSynced, e.getMessage());
+        }
+        rateIndex.load(rateRepository.findAll());
+    }
+
+    private static String key(ExchangeRate rate) {
+        return rate.getCountryCurrencyDesc() + "|" + rate.getRecordDate();
+    }
+
+    private List<ExchangeRate> toExchangeRates(List<ExchangeRateRecord> records) {
+        return records.stream()
+                .map(rateRecord -> ExchangeRate.builder()
+                        .countryCurrencyDesc(rateRecord.countryCurrencyDesc())
+                        .recordDate(rateRecord.recordDate())
+                        .exchangeRate(rateRecord.exchangeRate())
+                        .build())
+                .toList();
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.wex.service;
+
+import java.io.IOException;
+
+/**
+ * Raised when the fiscaldata api could not provide a rate, whether it timed out, kept failing after retries,
+ * or was skipped because the circuit is open or the bulkhead is full.
+ */
+public class ExchangeRateUnavailableException extends IOException {
+    public ExchangeRateUnavailableException(Throwable cause) {
+        super("Exchange rate service unavailable: " + cause, cause);
+    }
+}
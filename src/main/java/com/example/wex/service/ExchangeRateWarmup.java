@@ -0,0 +1,156 @@
+package com.example.wex.service;
+
+import com.example.wex.model.ExchangeRateRecord;
+import com.example.wex.model.Money;
+import com.example.wex.model.RateKey;
+import com.example.wex.repository.PurchaseRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Warms the exchange rate path before the application reports ready. Listeners of {@link ApplicationReadyEvent}
+ * run before readiness changes to accepting traffic, so the first requests routed to this instance find
+ * the database pool and a fiscaldata connection open and the rates of the current and previous quarter at hand.
+ * For each of {@code wex.warmup.currencies}, the rates recorded over those two quarters and the lookback window
+ * before them are fetched in one call, and every day the {@link ExchangeRateIndex} has no rate for is seeded
+ * into the {@link ExchangeRateCache}. With the startup sync the index usually covers them already and the call
+ * only opens the connection; without it, this saves one upstream call per currency and day.
+ * Warm-up failures are logged and never hold back startup.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "wex.warmup.enabled", havingValue = "true", matchIfMissing = true)
+public class ExchangeRateWarmup {
+    private static final int PREFETCH_PAGE_SIZE = 1000;
+
+    private final ExchangeRateIndex rateIndex;
+    private final ExchangeRateCache rateCache;
+    private final ExchangeRateClient exchangeRateClient;
+    private final PurchaseRepository purchaseRepository;
+    private final ConfigurableApplicationContext applicationContext;
+    private final Timer warmupTimer;
+    private final Set<String> currencies;
+    private final int lookbackMonths;
+    private final boolean exitAfterWarmup;
+
+    public ExchangeRateWarmup(ExchangeRateIndex rateIndex,
+                              ExchangeRateCache rateCache,
+                              ExchangeRateClient exchangeRateClient,
+                              PurchaseRepository purchaseRepository,
+                              ConfigurableApplicationContext applicationContext,
+                              MeterRegistry meterRegistry,
+                              @Value("${wex.warmup.currencies:${purchase.conversion.hot-currencies:}}") List<String> currencies,
+                              @Value("${fiscaldata.exchangerate.lookback-months:6}") int lookbackMonths,
+                              @Value("${wex.warmup.exit-after-warmup:false}") boolean exitAfterWarmup) {
+        this.rateIndex = rateIndex;
+        this.rateCache = rateCache;
+        this.exchangeRateClient = exchangeRateClient;
+        this.purchaseRepository = purchaseRepository;
+        this.applicationContext = applicationContext;
+        this.warmupTimer = Timer.builder("startup.warmup")
+                .description("Time spent warming up the exchange rate path before reporting ready")
+                .register(meterRegistry);
+        this.currencies = currencies.stream()
+                .map(String::trim)
+                .filter(countryCurrency -> !countryCurrency.isEmpty())
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        this.lookbackMonths = lookbackMonths;
+        this.exitAfterWarmup = exitAfterWarmup;
+    }
+
+    /**
+     * Runs after the startup sync has loaded the index. With {@code wex.warmup.exit-after-warmup} the
+     * application then shuts down, which is how the AppCDS training run records the classes startup loads.
+     */
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        long started = System.nanoTime();
+        primeDatabase();
+        var today = LocalDate.now();
+        var from = quarterStart(today).minusMonths(3);
+        int seeded = 0;
+        for (var countryCurrency : currencies) {
+            try {
+                seeded += prefetch(countryCurrency, from, today);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not prefetch {} exchange rates: {}", countryCurrency, e.getMessage());
+            }
+        }
+        long elapsed = System.nanoTime() - started;
+        warmupTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        log.info("Warmed up {} currencies from {} in {} ms, {} rates cached", currencies.size(), from,
+                TimeUnit.NANOSECONDS.toMillis(elapsed), seeded);
+
+        if (exitAfterWarmup) {
+            log.info("Exiting after warm-up");
+            System.exit(SpringApplication.exit(applicationContext));
+        }
+    }
+
+    /**
+     * Seeds the cache with the rate of every day from {@code from} to {@code to} that the index has none for,
+     * and returns how many days were seeded.
+     */
+    private int prefetch(String countryCurrency, LocalDate from, LocalDate to) throws IOException {
+        int separator = countryCurrency.lastIndexOf('-');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Expected country-currency, got " + countryCurrency);
+        }
+        var country = countryCurrency.substring(0, separator);
+        var currency = countryCurrency.substring(separator + 1);
+        List<ExchangeRateRecord> records = exchangeRateClient
+                .fetchRatesBetween(countryCurrency, from.minusMonths(lookbackMonths), to, PREFETCH_PAGE_SIZE)
+                .data();
+
+        int seeded = 0;
+        int next = 0;
+        ExchangeRateRecord floor = null;
+        for (var day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            while (next < records.size() && !records.get(next).recordDate().isAfter(day)) {
+                floor = records.get(next++);
+            }
+            if (floor == null || floor.recordDate().isBefore(day.minusMonths(lookbackMonths))
+                    || rateIndex.floorRate(countryCurrency, day) != ExchangeRateIndex.NO_RATE) {
+                continue;
+            }
+            rateCache.put(new RateKey(country, currency, day), Money.toScaledRate(floor.exchangeRate()));
+            seeded++;
+        }
+        return seeded;
+    }
+
+    /**
+     * Borrows a pooled connection and runs a query through Hibernate, so the first request does not pay for
+     * opening the connection or building the query plan.
+     */
+    private void primeDatabase() {
+        try {
+            purchaseRepository.count();
+        } catch (RuntimeException e) {
+            log.warn("Could not prime the database pool: {}", e.getMessage());
+        }
+    }
+
+    private static LocalDate quarterStart(LocalDate date) {
+        return date.withDayOfMonth(1).withMonth((date.getMonthValue() - 1) / 3 * 3 + 1);
+    }
+}
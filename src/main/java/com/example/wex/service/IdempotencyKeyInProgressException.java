@@ -0,0 +1,11 @@
+package com.example.wex.service;
+
+/**
+ * Raised when another instance has claimed an Idempotency-Key and is still creating its purchase, so the post
+ * can neither replay it nor create it again. The client retries later and gets the original transaction id.
+ */
+public class IdempotencyKeyInProgressException extends RuntimeException {
+    public IdempotencyKeyInProgressException(String idempotencyKey) {
+        super("Purchase for idempotency key " + idempotencyKey + " is still being created");
+    }
+}
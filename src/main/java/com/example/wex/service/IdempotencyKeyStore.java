@@ -0,0 +1,182 @@
+package com.example.wex.service;
+
+import com.example.wex.repository.IdempotencyKeyRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded, expiring store of the transaction id each client supplied Idempotency-Key created, so a retried
+ * post returns the original purchase instead of inserting it again.
+ * A new key is claimed atomically with a pending future: the first request creates the purchase, and
+ * concurrent duplicates wait on that future rather than on a lock, so creation never blocks other keys.
+ * With {@code purchase.idempotency.persistent} set, keys are also stored in the database, so they survive a
+ * restart and are shared between instances until they expire. A key is claimed in the database before its
+ * purchase is created, so an instance that finds it claimed never creates the purchase too: it replays the
+ * stored transaction id, or rejects the post with {@link IdempotencyKeyInProgressException} while the claiming
+ * instance is still creating it. A claim that is not completed within {@code purchase.idempotency.claim-timeout},
+ * because its instance died, can be taken over.
+ */
+@Slf4j
+@Component
+public class IdempotencyKeyStore implements MeterBinder {
+    public static final int MAX_KEY_LENGTH = 255;
+    private static final int MAX_CLAIM_ATTEMPTS = 3;
+
+    private final IdempotencyKeyRepository repository;
+    private final Cache<String, CompletableFuture<Long>> keys;
+    private final ConcurrentMap<String, CompletableFuture<Long>> keyMap;
+    private final Duration ttl;
+    private final boolean persistent;
+    private final Duration claimTimeout;
+    private final LongAdder replays = new LongAdder();
+
+    public IdempotencyKeyStore(IdempotencyKeyRepository repository,
+                               @Value("${purchase.idempotency.max-keys:100000}") long maxKeys,
+                               @Value("${purchase.idempotency.ttl:PT24H}") Duration ttl,
+                               @Value("${purchase.idempotency.persistent:false}") boolean persistent,
+                               @Value("${purchase.idempotency.claim-timeout:PT30S}") Duration claimTimeout) {
+        this.repository = repository;
+        this.keys = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterWrite(ttl)
+                .build();
+        this.keyMap = keys.asMap();
+        this.ttl = ttl;
+        this.persistent = persistent;
+        this.claimTimeout = claimTimeout;
+    }
+
+    public record Resolution(long trxId, boolean replayed) {
+    }
+
+    /**
+     * Returns the transaction id {@code idempotencyKey} created, calling {@code create} only when the key has
+     * not been seen within the ttl. If {@code create} throws, the key is released so the client can retry, and
+     * duplicates that were waiting on it get the same exception.
+     */
+    public Resolution resolve(String idempotencyKey, LongSupplier create) {
+        var pending = new CompletableFuture<Long>();
+        var existing = keyMap.putIfAbsent(idempotencyKey, pending);
+        if (existing != null) {
+            replays.increment();
+            return new Resolution(join(existing), true);
+        }
+
+        try {
+            var resolution = persistent ? claimOrReplay(idempotencyKey, create) : new Resolution(create.getAsLong(), false);
+            pending.complete(resolution.trxId());
+            if (resolution.replayed()) {
+                replays.increment();
+            }
+            return resolution;
+        } catch (RuntimeException e) {
+            keyMap.remove(idempotencyKey, pending);
+            pending.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    @Scheduled(initialDelayString = "${purchase.idempotency.purge-interval:PT1H}",
+            fixedDelayString = "${purchase.idempotency.purge-interval:PT1H}")
+    public void purgeExpired() {
+        if (!persistent) {
+            return;
+        }
+        int purged = repository.deleteCreatedBefore(LocalDateTime.now().minus(ttl));
+        log.info("Purged {} expired idempotency keys", purged);
+    }
+
+    public long size() {
+        keys.cleanUp();
+        return keys.estimatedSize();
+    }
+
+    /**
+     * Claims {@code idempotencyKey} in the database and creates its purchase, or replays the transaction id
+     * stored for it. Expired keys and abandoned claims are deleted and claimed again.
+     */
+    private Resolution claimOrReplay(String idempotencyKey, LongSupplier create) {
+        var claimedAt = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        for (int attempt = 1; !claim(idempotencyKey, claimedAt); attempt++) {
+            var stored = repository.findById(idempotencyKey).orElse(null);
+            boolean expired = stored != null && stored.getCreatedAt().isBefore(claimedAt.minus(ttl));
+            if (stored != null && !expired && stored.getTrxId() != null) {
+                return new Resolution(stored.getTrxId(), true);
+            }
+            if (attempt == MAX_CLAIM_ATTEMPTS) {
+                throw new IdempotencyKeyInProgressException(idempotencyKey);
+            }
+            if (stored == null) {
+                // deleted since the claim failed
+                continue;
+            }
+            boolean abandoned = stored.getTrxId() == null && stored.getCreatedAt().isBefore(claimedAt.minus(claimTimeout));
+            if (!expired && !abandoned) {
+                throw new IdempotencyKeyInProgressException(idempotencyKey);
+            }
+            repository.deleteClaim(idempotencyKey, stored.getCreatedAt());
+        }
+
+        long trxId;
+        try {
+            trxId = create.getAsLong();
+        } catch (RuntimeException e) {
+            repository.deleteClaim(idempotencyKey, claimedAt);
+            throw e;
+        }
+        if (repository.complete(idempotencyKey, claimedAt, trxId) == 0) {
+            log.warn("Idempotency key {} claim was taken over before purchase {} was created, it may be a duplicate",
+                    idempotencyKey, trxId);
+        }
+        return new Resolution(trxId, false);
+    }
+
+    private boolean claim(String idempotencyKey, LocalDateTime claimedAt) {
+        try {
+            repository.claim(idempotencyKey, claimedAt);
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            return false;
+        }
+    }
+
+    private static long join(CompletableFuture<Long> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("cache.size", keys, Cache::estimatedSize)
+                .tag("cache", "idempotencyKeys")
+                .description("Number of idempotency keys remembered")
+                .register(registry);
+        FunctionCounter.builder("purchase.idempotency.replays", replays, LongAdder::sum)
+                .description("Posts answered with the transaction id an earlier post with the same key created")
+                .register(registry);
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.wex.service;
+
+import com.example.wex.model.AggregateGranularity;
+import com.example.wex.model.Money;
+import com.example.wex.model.PurchaseAggregate;
+import com.example.wex.model.PurchaseAggregateResponse;
+import com.example.wex.repository.PurchaseDailyRollupRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Spend per day or month read from the daily rollups, one row per day in the range however many purchases
+ * it has. Converted amounts apply each day's exchange rate to that day's total, which is the rate every
+ * purchase of the day converts at, so they only differ from summing converted purchases by rounding.
+ */
+@Service
+@RequiredArgsConstructor
+public class PurchaseAggregateService {
+    private final PurchaseDailyRollupRepository rollupRepository;
+    private final PurchaseService purchaseService;
+
+    private static final class Bucket {
+        final LocalDate periodStart;
+        long purchaseCount;
+        long totalCents;
+        long minCents = Long.MAX_VALUE;
+        long maxCents = Long.MIN_VALUE;
+        boolean converted;
+        long convertedTotalCents;
+        long convertedMinCents = Long.MAX_VALUE;
+        long convertedMaxCents = Long.MIN_VALUE;
+        boolean stale;
+
+        Bucket(LocalDate periodStart) {
+            this.periodStart = periodStart;
+        }
+    }
+
+    /**
+     * Aggregates purchases made from {@code from} to {@code to} inclusive. With {@code currency} and
+     * {@code country} null only USD amounts are returned.
+     */
+    public PurchaseAggregateResponse getAggregates(LocalDate from, LocalDate to, AggregateGranularity granularity,
+                                                   String currency, String country) throws IOException {
+        var buckets = new LinkedHashMap<LocalDate, Bucket>();
+        List<LocalDate> missingRateDays = new ArrayList<>();
+        for (var rollup : rollupRepository.findByRollupDateBetweenOrderByRollupDate(from, to)) {
+            var bucket = buckets.computeIfAbsent(granularity.periodStart(rollup.getRollupDate()), Bucket::new);
+            bucket.purchaseCount += rollup.getPurchaseCount();
+            bucket.totalCents += rollup.getTotalCents();
+            bucket.minCents = Math.min(bucket.minCents, rollup.getMinCents());
+            bucket.maxCents = Math.max(bucket.maxCents, rollup.getMaxCents());
+            if (currency == null || country == null) {
+                continue;
+            }
+
+            var rateQuote = purchaseService.getExchangeRate(currency, country, rollup.getRollupDate());
+            if (rateQuote == null) {
+                missingRateDays.add(rollup.getRollupDate());
+                continue;
+            }
+            long scaledRate = rateQuote.scaledRate();
+            bucket.converted = true;
+            bucket.convertedTotalCents += Money.convert(rollup.getTotalCents(), scaledRate);
+            bucket.convertedMinCents = Math.min(bucket.convertedMinCents, Money.convert(rollup.getMinCents(), scaledRate));
+            bucket.convertedMaxCents = Math.max(bucket.convertedMaxCents, Money.convert(rollup.getMaxCents(), scaledRate));
+            bucket.stale |= rateQuote.stale();
+        }
+
+        return PurchaseAggregateResponse.builder()
+                .aggregates(buckets.values().stream().map(PurchaseAggregateService::toPurchaseAggregate).toList())
+                .missingRateDays(missingRateDays)
+                .build();
+    }
+
+    private static PurchaseAggregate toPurchaseAggregate(Bucket bucket) {
+        return PurchaseAggregate.builder()
+                .periodStart(bucket.periodStart)
+                .purchaseCount(bucket.purchaseCount)
+                .totalAmt(Money.toAmount(bucket.totalCents))
+                .minAmt(Money.toAmount(bucket.minCents))
+                .maxAmt(Money.toAmount(bucket.maxCents))
+                .convertedTotalAmt(bucket.converted ? Money.toAmount(bucket.convertedTotalCents) : null)
+                .convertedMinAmt(bucket.converted ? Money.toAmount(bucket.convertedMinCents) : null)
+                .convertedMaxAmt(bucket.converted ? Money.toAmount(bucket.convertedMaxCents) : null)
+                .stale(bucket.stale)
+                .build();
+    }
+}
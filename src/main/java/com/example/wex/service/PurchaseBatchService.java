@@ -0,0 +1,106 @@
+package com.example.wex.service;
+
+import com.example.wex.model.BatchPurchaseItem;
+import com.example.wex.model.BatchPurchaseResponse;
+import com.example.wex.model.PurchaseRequest;
+import com.example.wex.model.PurchaseTrx;
+import com.example.wex.repository.PurchaseRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Validates and saves purchases in bulk. Valid purchases are written in chunks of
+ * {@code purchase.batch.chunk-size}, each chunk in its own transaction so Hibernate can send its
+ * inserts as JDBC batches, with ids taken from the pooled purchase_trx_seq.
+ */
+@Service
+@RequiredArgsConstructor
+public class PurchaseBatchService {
+    @Value("${purchase.batch.chunk-size:500}")
+    private int chunkSize;
+
+    private final PurchaseService purchaseService;
+    private final PurchaseRepository repository;
+    private final PurchaseRollupService rollupService;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+
+    public BatchPurchaseResponse createPurchases(InputStream ndjson) throws IOException {
+        try (var requests = objectMapper.readerFor(PurchaseRequest.class).<PurchaseRequest>readValues(ndjson)) {
+            return createPurchases(requests.readAll());
+        }
+    }
+
+    public BatchPurchaseResponse createPurchases(List<PurchaseRequest> requests) {
+        List<BatchPurchaseItem> items = new ArrayList<>(requests.size());
+        List<PurchaseTrx> chunk = new ArrayList<>(chunkSize);
+        List<BatchPurchaseItem> chunkItems = new ArrayList<>(chunkSize);
+
+        for (int index = 0; index < requests.size(); index++) {
+            var item = BatchPurchaseItem.builder().index(index).build();
+            items.add(item);
+            try {
+                var purchaseTrx = toValidPurchaseTrx(requests.get(index));
+                chunk.add(purchaseTrx);
+                chunkItems.add(item);
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                item.setError(e.getMessage());
+            }
+            if (chunk.size() == chunkSize) {
+                saveChunk(chunk, chunkItems);
+            }
+        }
+        saveChunk(chunk, chunkItems);
+
+        int created = (int) items.stream().filter(item -> item.getTransactionId() != null).count();
+        return BatchPurchaseResponse.builder()
+                .created(created)
+                .failed(items.size() - created)
+                .items(items)
+                .build();
+    }
+
+    public PurchaseTrx toValidPurchaseTrx(PurchaseRequest request) {
+        var violations = validator.validate(request);
+        if (!violations.isEmpty()) {
+            throw new IllegalArgumentException(violations.stream()
+                    .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                    .collect(Collectors.joining(", ")));
+        }
+        if (request.getAmount() == null || request.getTrxDate() == null) {
+            throw new IllegalArgumentException("amount and trxDate are required");
+        }
+        return purchaseService.toPurchaseTrx(request);
+    }
+
+    private void saveChunk(List<PurchaseTrx> chunk, List<BatchPurchaseItem> chunkItems) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List<PurchaseTrx> saved = List.of();
+        try {
+            saved = repository.saveAllAndFlush(chunk);
+        } catch (RuntimeException e) {
+            chunkItems.forEach(item -> item.setError("Failed to save purchase: " + e.getMessage()));
+        }
+        for (int i = 0; i < saved.size(); i++) {
+            chunkItems.get(i).setTransactionId(saved.get(i).getTrxId());
+        }
+        // outside the try, so only the save decides whether an item was created
+        if (!saved.isEmpty()) {
+            rollupService.record(saved);
+        }
+        chunk.clear();
+        chunkItems.clear();
+    }
+}
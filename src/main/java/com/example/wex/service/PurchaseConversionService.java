@@ -0,0 +1,180 @@
+package com.example.wex.service;
+
+import com.example.wex.model.Money;
+import com.example.wex.model.PurchaseConversion;
+import com.example.wex.model.PurchaseTrx;
+import com.example.wex.repository.PurchaseConversionRepository;
+import com.example.wex.repository.PurchaseRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Materializes conversions of purchases into the configured hot currencies. A conversion is only stored once
+ * its rate is settled in the {@link ExchangeRateIndex}, which means a later rate has been published; purchases
+ * whose rates were not yet settled at write time are backfilled by the scheduled {@link #reconcile()}.
+ */
+@Slf4j
+@Service
+public class PurchaseConversionService {
+    private final PurchaseConversionRepository conversionRepository;
+    private final PurchaseRepository purchaseRepository;
+    private final ExchangeRateIndex rateIndex;
+    private final AsyncTaskExecutor taskExecutor;
+    private final Set<String> hotCurrencies;
+    private final int reconcilePageSize;
+    // every purchase made before this was settled when the last complete reconcile started, so that run stored it
+    private volatile LocalDateTime reconcileFrom;
+
+    public PurchaseConversionService(PurchaseConversionRepository conversionRepository,
+                                     PurchaseRepository purchaseRepository,
+                                     ExchangeRateIndex rateIndex,
+                                     @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+                                     AsyncTaskExecutor taskExecutor,
+                                     @Value("${purchase.conversion.hot-currencies:}") List<String> hotCurrencies,
+                                     @Value("${purchase.conversion.reconcile-page-size:500}") int reconcilePageSize) {
+        this.conversionRepository = conversionRepository;
+        this.purchaseRepository = purchaseRepository;
+        this.rateIndex = rateIndex;
+        this.taskExecutor = taskExecutor;
+        this.hotCurrencies = hotCurrencies.stream()
+                .map(String::trim)
+                .filter(countryCurrency -> !countryCurrency.isEmpty())
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        this.reconcilePageSize = reconcilePageSize;
+    }
+
+    public Optional<PurchaseConversion> findConversion(long trxId, String countryCurrency) {
+        if (!hotCurrencies.contains(countryCurrency)) {
+            return Optional.empty();
+        }
+        return conversionRepository.findWithPurchase(trxId, countryCurrency);
+    }
+
+    public void materializeAsync(PurchaseTrx purchaseTrx) {
+        materializeAsync(List.of(purchaseTrx));
+    }
+
+    public void materializeAsync(List<PurchaseTrx> purchases) {
+        if (hotCurrencies.isEmpty() || purchases.isEmpty()) {
+            return;
+        }
+        taskExecutor.execute(() -> {
+            try {
+                materialize(purchases);
+            } catch (RuntimeException e) {
+                log.warn("Could not materialize conversions of {} purchases: {}", purchases.size(), e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Stores every missing hot currency conversion of {@code purchases} whose rate is settled and returns how
+     * many were stored.
+     */
+    public int materialize(List<PurchaseTrx> purchases) {
+        if (hotCurrencies.isEmpty() || purchases.isEmpty()) {
+            return 0;
+        }
+        var existing = conversionRepository.findByTrxIdIn(purchases.stream().map(PurchaseTrx::getTrxId).toList())
+                .stream()
+                .map(conversion -> conversion.getTrxId() + "|" + conversion.getCountryCurrency())
+                .collect(Collectors.toSet());
+
+        List<PurchaseConversion> conversions = new ArrayList<>();
+        for (var purchaseTrx : purchases) {
+            var purchaseDate = purchaseTrx.getTransactionDate().toLocalDate();
+            for (var countryCurrency : hotCurrencies) {
+                if (existing.contains(purchaseTrx.getTrxId() + "|" + countryCurrency)
+                        || !rateIndex.isSettled(countryCurrency, purchaseDate)) {
+                    continue;
+                }
+                long scaledRate = rateIndex.floorRate(countryCurrency, purchaseDate);
+                if (scaledRate == ExchangeRateIndex.NO_RATE) {
+                    continue;
+                }
+                conversions.add(PurchaseConversion.builder()
+                        .trxId(purchaseTrx.getTrxId())
+                        .countryCurrency(countryCurrency)
+                        .scaledRate(scaledRate)
+                        .convertedCents(Money.convert(purchaseTrx.getAmountInCents(), scaledRate))
+                        .build());
+            }
+        }
+        if (conversions.isEmpty()) {
+            return 0;
+        }
+        try {
+            conversionRepository.saveAll(conversions);
+            return conversions.size();
+        } catch (DataIntegrityViolationException e) {
+            // some were stored concurrently by the write path or another reconcile run; store the rest one by one
+            log.debug("Conversions were materialized concurrently: {}", e.getMessage());
+            return saveEach(conversions);
+        }
+    }
+
+    /**
+     * Saves each conversion in its own transaction, skipping those already stored, and returns how many were
+     * saved.
+     */
+    private int saveEach(List<PurchaseConversion> conversions) {
+        int saved = 0;
+        for (var conversion : conversions) {
+            // the rolled back batch left its id behind
+            conversion.setId(0);
+            try {
+                conversionRepository.save(conversion);
+                saved++;
+            } catch (DataIntegrityViolationException e) {
+                log.debug("Conversion of {} into {} was materialized concurrently", conversion.getTrxId(),
+                        conversion.getCountryCurrency());
+            }
+        }
+        return saved;
+    }
+
+    /**
+     * Stores the missing conversions of purchases that could still have been unsettled when the previous run
+     * started. The first run after startup scans every purchase. Older purchases were settled then and that run
+     * stored their conversions, or they have no rate in the lookback window and never will.
+     */
+    @Scheduled(initialDelayString = "${purchase.conversion.reconcile-interval:PT15M}",
+            fixedDelayString = "${purchase.conversion.reconcile-interval:PT15M}")
+    public void reconcile() {
+        if (hotCurrencies.isEmpty()) {
+            return;
+        }
+        // taken before the scan, as rates indexed during it may settle purchases the scan has already passed
+        var unsettledFrom = rateIndex.oldestUnsettledDate(hotCurrencies);
+        long afterId = -1L;
+        int materialized = 0;
+        List<PurchaseTrx> page;
+        do {
+            page = purchaseRepository.findMissingConversionsAfter(reconcileFrom, afterId, hotCurrencies,
+                    hotCurrencies.size(), PageRequest.of(0, reconcilePageSize));
+            if (page.isEmpty()) {
+                break;
+            }
+            materialized += materialize(page);
+            afterId = page.get(page.size() - 1).getTrxId();
+        } while (page.size() == reconcilePageSize);
+        log.info("Reconciled hot currency conversions of purchases from {}, {} materialized",
+                reconcileFrom != null ? reconcileFrom : "the start", materialized);
+        reconcileFrom = unsettledFrom != null ? unsettledFrom.atStartOfDay() : null;
+    }
+}
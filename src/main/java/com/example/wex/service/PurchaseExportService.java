@@ -0,0 +1,288 @@
+package com.example.wex.service;
+
+import com.example.wex.model.Money;
+import com.example.wex.model.PurchaseDailyRollup;
+import com.example.wex.model.PurchaseTrx;
+import com.example.wex.model.RateQuote;
+import com.example.wex.repository.PurchaseDailyRollupRepository;
+import com.example.wex.repository.PurchaseRepository;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports every purchase in a date range with its converted amount as gzip compressed CSV.
+ * The range is cut into runs of consecutive days holding about {@code purchase.export.rows-per-range}
+ * purchases each, going by the daily rollups, and the runs are read, converted and compressed in parallel on a
+ * fork-join pool. Each run is its own gzip member; members are written to the response in date order as they
+ * complete, and concatenated members are one valid gzip stream. A run found to hold more than
+ * {@code rows-per-range} purchases while streaming, as days not rolled up yet can, ends its member there and
+ * continues in a new one. At most twice the pool's parallelism members are in flight, so memory use does not
+ * depend on the size of the export.
+ * Each distinct purchase date's rate is resolved once per export, however many ranges and purchases share it,
+ * and outside any lock, so tasks needing other dates' rates are never held up by it.
+ */
+@Slf4j
+@Service
+public class PurchaseExportService {
+    public static final String CSV_HEADER =
+            "transactionId,description,transactionDate,amountUSD,exchangeRate,convertedAmt,stale\n";
+
+    private final PurchaseRepository repository;
+    private final PurchaseDailyRollupRepository rollupRepository;
+    private final PurchaseService purchaseService;
+    private final EntityManager entityManager;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ForkJoinPool exportPool;
+    private final long rowsPerRange;
+    private final int maxDaysPerRange;
+
+    public PurchaseExportService(PurchaseRepository repository,
+                                 PurchaseDailyRollupRepository rollupRepository,
+                                 PurchaseService purchaseService,
+                                 EntityManager entityManager,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${purchase.export.parallelism:4}") int parallelism,
+                                 @Value("${purchase.export.rows-per-range:50000}") long rowsPerRange,
+                                 @Value("${purchase.export.max-days-per-range:31}") int maxDaysPerRange) {
+        this.repository = repository;
+        this.rollupRepository = rollupRepository;
+        this.purchaseService = purchaseService;
+        this.entityManager = entityManager;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.exportPool = new ForkJoinPool(parallelism);
+        this.rowsPerRange = rowsPerRange;
+        this.maxDaysPerRange = maxDaysPerRange;
+    }
+
+    /**
+     * Days [from, toExclusive), or with {@code afterDate} set, the part of them after the (afterDate, afterId)
+     * cursor.
+     */
+    private record DateRange(LocalDate from, LocalDate toExclusive, LocalDateTime afterDate, long afterId) {
+        DateRange(LocalDate from, LocalDate toExclusive) {
+            this(from, toExclusive, null, -1L);
+        }
+
+        DateRange after(PurchaseTrx purchaseTrx) {
+            return new DateRange(from, toExclusive, purchaseTrx.getTransactionDate(), purchaseTrx.getTrxId());
+        }
+    }
+
+    /**
+     * A gzip member, and the rest of its range when it stopped at {@code rowsPerRange} purchases.
+     */
+    private record Member(byte[] gzip, DateRange rest) {
+    }
+
+    /**
+     * Writes purchases made from {@code from} to {@code to} inclusive, converted to {@code currency} of
+     * {@code country}, to {@code out}. Purchases without a rate within the lookback window are exported with
+     * empty rate and converted amount.
+     */
+    public void export(LocalDate from, LocalDate to, String currency, String country, OutputStream out) throws IOException {
+        Map<LocalDate, CompletableFuture<Optional<RateQuote>>> rates = new ConcurrentHashMap<>();
+        Function<LocalDate, Optional<RateQuote>> rateOf = date -> rateOf(rates, date, currency, country);
+
+        var channel = Channels.newChannel(out);
+        var window = new ArrayDeque<ForkJoinTask<Member>>();
+        int maxInFlight = exportPool.getParallelism() * 2;
+        boolean first = true;
+        try {
+            for (var range : splitRange(from, to)) {
+                boolean header = first;
+                window.add(exportPool.submit(() -> exportRange(range, rateOf, header)));
+                first = false;
+                if (window.size() >= maxInFlight) {
+                    writeNext(channel, window, rateOf);
+                }
+            }
+            while (!window.isEmpty()) {
+                writeNext(channel, window, rateOf);
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException uncheckedIOException) {
+                throw uncheckedIOException.getCause();
+            }
+            throw new IllegalStateException("Failed to export purchases: " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while exporting purchases", e);
+        } finally {
+            window.forEach(task -> task.cancel(true));
+        }
+        log.info("Exported purchases from {} to {} in {}-{}, {} distinct dates", from, to, country, currency, rates.size());
+    }
+
+    /**
+     * Rate of {@code date}, resolved by the first task to ask for it. The upstream call runs outside the map's
+     * lock; tasks asking for the same date meanwhile wait on its future.
+     */
+    private Optional<RateQuote> rateOf(Map<LocalDate, CompletableFuture<Optional<RateQuote>>> rates, LocalDate date,
+                                       String currency, String country) {
+        var rate = rates.get(date);
+        if (rate == null) {
+            var resolving = new CompletableFuture<Optional<RateQuote>>();
+            rate = rates.putIfAbsent(date, resolving);
+            if (rate == null) {
+                rate = resolving;
+                try {
+                    resolving.complete(Optional.ofNullable(purchaseService.getExchangeRate(currency, country, date)));
+                } catch (IOException | RuntimeException e) {
+                    resolving.completeExceptionally(e);
+                }
+            }
+        }
+        try {
+            return rate.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw new UncheckedIOException(ioException);
+            }
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    /**
+     * Writes the oldest member in flight, and queues the rest of its range, if any, ahead of the later ranges.
+     */
+    private void writeNext(WritableByteChannel channel, ArrayDeque<ForkJoinTask<Member>> window,
+                           Function<LocalDate, Optional<RateQuote>> rateOf)
+            throws IOException, ExecutionException, InterruptedException {
+        var member = window.poll().get();
+        writeFully(channel, member.gzip());
+        if (member.rest() != null) {
+            window.addFirst(exportPool.submit(() -> exportRange(member.rest(), rateOf, false)));
+        }
+    }
+
+    /**
+     * Consecutive days holding about {@code rowsPerRange} purchases each by their rollups, and never more than
+     * {@code maxDaysPerRange} days, so ranges stay bounded even for days not rolled up yet.
+     */
+    private List<DateRange> splitRange(LocalDate from, LocalDate to) {
+        var purchasesPerDay = rollupRepository.findByRollupDateBetweenOrderByRollupDate(from, to).stream()
+                .collect(Collectors.toMap(PurchaseDailyRollup::getRollupDate, PurchaseDailyRollup::getPurchaseCount));
+        List<DateRange> ranges = new ArrayList<>();
+        var rangeFrom = from;
+        long rows = 0;
+        for (var day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            rows += purchasesPerDay.getOrDefault(day, 0L);
+            var next = day.plusDays(1);
+            if (rows >= rowsPerRange || rangeFrom.plusDays(maxDaysPerRange).equals(next) || day.equals(to)) {
+                ranges.add(new DateRange(rangeFrom, next));
+                rangeFrom = next;
+                rows = 0;
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * Compresses the purchases of {@code range} into one member, stopping after {@code rowsPerRange} of them.
+     */
+    private Member exportRange(DateRange range, Function<LocalDate, Optional<RateQuote>> rateOf, boolean header) {
+        var compressed = new ByteArrayOutputStream();
+        DateRange rest;
+        try (var writer = new OutputStreamWriter(new GZIPOutputStream(compressed, 64 * 1024), StandardCharsets.UTF_8)) {
+            if (header) {
+                writer.write(CSV_HEADER);
+            }
+            rest = readOnlyTransaction.execute(status -> {
+                var to = range.toExclusive().atStartOfDay();
+                try (var purchases = range.afterDate() == null
+                        ? repository.streamRange(range.from().atStartOfDay(), to)
+                        : repository.streamRangeAfter(range.afterDate(), range.afterId(), to)) {
+                    var iterator = purchases.iterator();
+                    for (long rows = 0; iterator.hasNext(); rows++) {
+                        var purchaseTrx = iterator.next();
+                        writeRow(writer, purchaseTrx, rateOf.apply(purchaseTrx.getTransactionDate().toLocalDate()));
+                        entityManager.detach(purchaseTrx);
+                        if (rows + 1 == rowsPerRange && iterator.hasNext()) {
+                            return range.after(purchaseTrx);
+                        }
+                    }
+                    return null;
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Member(compressed.toByteArray(), rest);
+    }
+
+    private static void writeRow(Writer writer, PurchaseTrx purchaseTrx, Optional<RateQuote> rateQuote) {
+        var row = new StringBuilder(128)
+                .append(purchaseTrx.getTrxId()).append(',')
+                .append(csvField(purchaseTrx.getDescription())).append(',')
+                .append(purchaseTrx.getTransactionDate()).append(',')
+                .append(Money.toAmount(purchaseTrx.getAmountInCents()).toPlainString()).append(',');
+        if (rateQuote.isPresent()) {
+            long scaledRate = rateQuote.get().scaledRate();
+            row.append(Money.toRate(scaledRate).toPlainString()).append(',')
+                    .append(Money.toAmount(Money.convert(purchaseTrx.getAmountInCents(), scaledRate)).toPlainString()).append(',')
+                    .append(rateQuote.get().stale());
+        } else {
+            row.append(",,");
+        }
+        try {
+            writer.append(row).append('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static void writeFully(WritableByteChannel channel, byte[] member) throws IOException {
+        var buffer = ByteBuffer.wrap(member);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        exportPool.shutdownNow();
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.wex.service;
+
+import com.example.wex.model.PurchaseTrx;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hands out purchase ids ahead of the insert, a preallocated block at a time. Blocks are drawn from the
+ * entity's own identifier generator, so ids never collide with purchases saved through JPA, and refilling a
+ * block costs one sequence call per {@code allocationSize} ids.
+ */
+@Component
+public class PurchaseIdAllocator {
+    private final SessionFactoryImplementor sessionFactory;
+    private final int blockSize;
+
+    private long[] block = new long[0];
+    private int next;
+
+    public PurchaseIdAllocator(EntityManagerFactory entityManagerFactory,
+                               @Value("${purchase.write-behind.id-block-size:500}") int blockSize) {
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        this.blockSize = blockSize;
+    }
+
+    public synchronized long next() {
+        if (next == block.length) {
+            block = allocateBlock();
+            next = 0;
+        }
+        return block[next++];
+    }
+
+    @SuppressWarnings("deprecation")
+    private long[] allocateBlock() {
+        var generator = (IdentifierGenerator) sessionFactory.getMappingMetamodel()
+                .getEntityDescriptor(PurchaseTrx.class)
+                .getIdentifierGenerator();
+        var ids = new long[blockSize];
+        try (var session = sessionFactory.openStatelessSession()) {
+            var transaction = session.beginTransaction();
+            for (int i = 0; i < blockSize; i++) {
+                ids[i] = ((Number) generator.generate((SharedSessionContractImplementor) session, null)).longValue();
+            }
+            transaction.commit();
+        }
+        return ids;
+    }
+}
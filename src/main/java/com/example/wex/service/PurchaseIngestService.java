@@ -0,0 +1,145 @@
+package com.example.wex.service;
+
+import com.example.wex.model.BatchPurchaseItem;
+import com.example.wex.model.IngestResponse;
+import com.example.wex.model.PurchaseRequest;
+import com.example.wex.model.PurchaseTrx;
+import com.example.wex.repository.PurchaseRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingests uploads of any size. Purchases are parsed one at a time off the request body and handed to a
+ * single writer through a bounded queue; when the writer falls behind the parser blocks, which in turn
+ * stops reading the body, so heap use depends on the queue capacity and never on the upload size.
+ * Chunks are committed as they fill, so an upload that turns malformed partway is answered with what was
+ * saved before the malformed record and where it is.
+ */
+@Service
+@RequiredArgsConstructor
+public class PurchaseIngestService {
+    private static final PurchaseTrx END_OF_UPLOAD = new PurchaseTrx();
+
+    @Value("${purchase.batch.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${purchase.ingest.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${purchase.ingest.max-reported-errors:100}")
+    private int maxReportedErrors;
+
+    private final PurchaseBatchService purchaseBatchService;
+    private final PurchaseRepository repository;
+    private final PurchaseRollupService rollupService;
+    private final ObjectMapper objectMapper;
+    @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+    private final AsyncTaskExecutor taskExecutor;
+
+    public IngestResponse ingestPurchases(InputStream body) throws IOException {
+        long start = System.nanoTime();
+        BlockingQueue<PurchaseTrx> queue = new ArrayBlockingQueue<>(queueCapacity);
+        Future<Long> writer = taskExecutor.submit(() -> writePurchases(queue));
+
+        long rejected = 0;
+        int index = 0;
+        BatchPurchaseItem malformed = null;
+        List<BatchPurchaseItem> errors = new ArrayList<>();
+        try (var requests = objectMapper.readerFor(PurchaseRequest.class).<PurchaseRequest>readValues(body)) {
+            for (; requests.hasNextValue(); index++) {
+                var request = requests.nextValue();
+                try {
+                    enqueue(queue, purchaseBatchService.toValidPurchaseTrx(request), writer);
+                } catch (IllegalArgumentException | DateTimeParseException e) {
+                    rejected++;
+                    if (errors.size() < maxReportedErrors) {
+                        errors.add(BatchPurchaseItem.builder().index(index).error(e.getMessage()).build());
+                    }
+                }
+            }
+        } catch (JsonProcessingException e) {
+            // the parser cannot find the next record past a malformed one, so the upload ends there; the chunks
+            // before it are already committed and are reported as saved
+            malformed = BatchPurchaseItem.builder().index(index).error(e.getOriginalMessage()).build();
+        } catch (IOException | RuntimeException e) {
+            writer.cancel(true);
+            throw e;
+        }
+        enqueue(queue, END_OF_UPLOAD, writer);
+
+        long saved = awaitWriter(writer);
+        long elapsedNanos = System.nanoTime() - start;
+        return IngestResponse.builder()
+                .saved(saved)
+                .rejected(rejected)
+                .errors(errors)
+                .malformed(malformed)
+                .elapsedMillis(TimeUnit.NANOSECONDS.toMillis(elapsedNanos))
+                .purchasesPerSecond(saved * 1e9 / Math.max(elapsedNanos, 1))
+                .build();
+    }
+
+    private long writePurchases(BlockingQueue<PurchaseTrx> queue) throws InterruptedException {
+        long saved = 0;
+        List<PurchaseTrx> chunk = new ArrayList<>(chunkSize);
+        while (true) {
+            var purchaseTrx = queue.take();
+            if (purchaseTrx != END_OF_UPLOAD) {
+                chunk.add(purchaseTrx);
+            }
+            if (chunk.size() == chunkSize || (purchaseTrx == END_OF_UPLOAD && !chunk.isEmpty())) {
+                repository.saveAllAndFlush(chunk);
+                rollupService.record(chunk);
+                saved += chunk.size();
+                chunk.clear();
+            }
+            if (purchaseTrx == END_OF_UPLOAD) {
+                return saved;
+            }
+        }
+    }
+
+    private void enqueue(BlockingQueue<PurchaseTrx> queue, PurchaseTrx purchaseTrx, Future<Long> writer) {
+        try {
+            do {
+                if (writer.isDone()) {
+                    // writer failed, surface its failure rather than parsing on into a queue nobody drains
+                    awaitWriter(writer);
+                }
+            } while (!queue.offer(purchaseTrx, 100, TimeUnit.MILLISECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writer.cancel(true);
+            throw new IllegalStateException("Interrupted while ingesting purchases", e);
+        }
+    }
+
+    private long awaitWriter(Future<Long> writer) {
+        try {
+            return writer.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to save purchases: " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writer.cancel(true);
+            throw new IllegalStateException("Interrupted while ingesting purchases", e);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.example.wex.service;
+
+import com.example.wex.model.PurchaseTrx;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of purchases accepted by the write-behind path but not yet committed to the database.
+ * Records are length prefixed and checksummed, so a record torn by a crash mid-append ends recovery instead of
+ * being misread. Appends go to the newest segment file, segments roll at {@code segmentSize}, and a segment is
+ * deleted once every record in it is committed.
+ * Concurrent appenders share fsyncs: {@link #sync(long)} forces the file once for every record appended so far,
+ * so under load one fsync acknowledges a whole group of purchases.
+ */
+@Slf4j
+public class PurchaseJournal implements Closeable {
+    private static final String SEGMENT_PREFIX = "purchases-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    // length and checksum, then trx id, epoch second, nano, cents and description length
+    private static final int HEADER_BYTES = Integer.BYTES + Integer.BYTES;
+    private static final int FIXED_PAYLOAD_BYTES = Long.BYTES + Long.BYTES + Integer.BYTES + Long.BYTES + Short.BYTES;
+
+    private final Path directory;
+    private final long segmentSize;
+    private final Object appendLock = new Object();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Deque<Segment> closedSegments = new ArrayDeque<>();
+    private final List<Path> recoveredSegments = new ArrayList<>();
+
+    private Segment active;
+    private long nextSegmentIndex;
+    private long appended;
+    private volatile long synced;
+
+    private record Segment(Path path, FileChannel channel, long lastSeq) {
+        Segment withLastSeq(long seq) {
+            return new Segment(path, channel, seq);
+        }
+    }
+
+    public PurchaseJournal(Path directory, long segmentSize) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        try (var files = segmentFiles()) {
+            files.forEach(recoveredSegments::add);
+        }
+        this.nextSegmentIndex = recoveredSegments.isEmpty() ? 0 :
+                segmentIndex(recoveredSegments.get(recoveredSegments.size() - 1)) + 1;
+        this.active = openSegment();
+    }
+
+    /**
+     * Purchases journaled by an earlier run, in append order. Reading stops at the first torn or corrupt record.
+     */
+    public List<PurchaseTrx> recover() throws IOException {
+        List<PurchaseTrx> purchases = new ArrayList<>();
+        for (var path : recoveredSegments) {
+            var buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+            while (buffer.remaining() >= HEADER_BYTES) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length < FIXED_PAYLOAD_BYTES || length > buffer.remaining()) {
+                    log.warn("Journal {} ends in a torn record, {} bytes ignored", path, buffer.remaining() + HEADER_BYTES);
+                    break;
+                }
+                var payload = buffer.slice(buffer.position(), length);
+                buffer.position(buffer.position() + length);
+                if (checksum(payload) != checksum) {
+                    log.warn("Journal {} has a corrupt record, recovery of the segment stops there", path);
+                    break;
+                }
+                purchases.add(decode(payload));
+            }
+        }
+        return purchases;
+    }
+
+    /**
+     * Deletes the segments written by an earlier run, once everything {@link #recover()} returned is committed.
+     */
+    public void discardRecovered() throws IOException {
+        for (var path : recoveredSegments) {
+            Files.deleteIfExists(path);
+        }
+        recoveredSegments.clear();
+    }
+
+    /**
+     * Appends {@code purchaseTrx} and returns its sequence number. The record is not durable until
+     * {@link #sync(long)} returns for that sequence number.
+     */
+    public long append(PurchaseTrx purchaseTrx) throws IOException {
+        var record = encode(purchaseTrx);
+        synchronized (appendLock) {
+            if (active.channel().position() + record.remaining() > segmentSize && active.channel().position() > 0) {
+                roll();
+            }
+            while (record.hasRemaining()) {
+                active.channel().write(record);
+            }
+            active = active.withLastSeq(++appended);
+            return appended;
+        }
+    }
+
+    /**
+     * Blocks until the record with sequence number {@code seq} is on disk. Whoever takes the sync lock forces
+     * every record appended so far, so waiting appenders usually find their record already synced.
+     */
+    public void sync(long seq) throws IOException {
+        if (synced >= seq) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            if (synced >= seq) {
+                return;
+            }
+            long target;
+            FileChannel channel;
+            synchronized (appendLock) {
+                target = appended;
+                channel = active.channel();
+            }
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                // rolled meanwhile, and a segment is forced before it is closed
+            }
+            synced = target;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Records that every purchase up to sequence number {@code seq} is committed, deleting the rolled segments
+     * that hold nothing newer.
+     */
+    public void committed(long seq) throws IOException {
+        List<Path> deletable = new ArrayList<>();
+        synchronized (appendLock) {
+            while (!closedSegments.isEmpty() && closedSegments.peekFirst().lastSeq() <= seq) {
+                deletable.add(closedSegments.pollFirst().path());
+            }
+        }
+        for (var path : deletable) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Closes the journal, deleting the active segment too when everything appended to it is committed.
+     */
+    public void close(long committedSeq) throws IOException {
+        synchronized (appendLock) {
+            active.channel().force(false);
+            active.channel().close();
+            if (committedSeq >= appended) {
+                closedSegments.addLast(active);
+            }
+        }
+        committed(committedSeq);
+    }
+
+    @Override
+    public void close() throws IOException {
+        close(-1L);
+    }
+
+    private void roll() throws IOException {
+        active.channel().force(false);
+        active.channel().close();
+        closedSegments.addLast(active);
+        active = openSegment();
+    }
+
+    private Segment openSegment() throws IOException {
+        var path = directory.resolve(SEGMENT_PREFIX + "%020d".formatted(nextSegmentIndex++) + SEGMENT_SUFFIX);
+        var channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        return new Segment(path, channel, appended);
+    }
+
+    private Stream<Path> segmentFiles() throws IOException {
+        return Files.list(directory)
+                .filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                        && path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                .sorted();
+    }
+
+    private static long segmentIndex(Path path) {
+        var name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static ByteBuffer encode(PurchaseTrx purchaseTrx) {
+        var description = purchaseTrx.getDescription() != null ?
+                purchaseTrx.getDescription().getBytes(StandardCharsets.UTF_8) : null;
+        int length = FIXED_PAYLOAD_BYTES + (description != null ? description.length : 0);
+        var buffer = ByteBuffer.allocate(HEADER_BYTES + length);
+        buffer.putInt(length).putInt(0);
+        buffer.putLong(purchaseTrx.getTrxId())
+                .putLong(purchaseTrx.getTransactionDate().toEpochSecond(ZoneOffset.UTC))
+                .putInt(purchaseTrx.getTransactionDate().getNano())
+                .putLong(purchaseTrx.getAmountInCents())
+                .putShort((short) (description != null ? description.length : -1));
+        if (description != null) {
+            buffer.put(description);
+        }
+        buffer.putInt(Integer.BYTES, checksum(buffer.slice(HEADER_BYTES, length)));
+        return buffer.flip();
+    }
+
+    private static PurchaseTrx decode(ByteBuffer payload) {
+        long trxId = payload.getLong();
+        var transactionDate = LocalDateTime.ofEpochSecond(payload.getLong(), payload.getInt(), ZoneOffset.UTC);
+        long amountInCents = payload.getLong();
+        short descriptionLength = payload.getShort();
+        String description = null;
+        if (descriptionLength >= 0) {
+            var bytes = new byte[descriptionLength];
+            payload.get(bytes);
+            description = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return new PurchaseTrx(trxId, description, transactionDate, amountInCents);
+    }
+
+    private static int checksum(ByteBuffer payload) {
+        var crc = new CRC32C();
+        crc.update(payload.duplicate());
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.wex.service;
+
+import com.example.wex.model.PurchaseFilter;
+import com.example.wex.model.PurchasePage;
+import com.example.wex.model.PurchaseTrx;
+import com.example.wex.repository.PurchaseRepository;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
+
+@Service
+@RequiredArgsConstructor
+public class PurchaseListingService {
+    @Value("${purchase.listing.max-page-size:1000}")
+    private int maxPageSize;
+
+    private final PurchaseRepository repository;
+    private final EntityManager entityManager;
+
+    public PurchasePage listPurchases(PurchaseFilter filter, LocalDateTime afterDate, Long afterId, int pageSize) {
+        var limit = Math.min(Math.max(pageSize, 1), maxPageSize);
+        // no cursor means start just before the earliest purchase the filter allows
+        var seekDate = afterDate != null ? afterDate : filter.from();
+        // afterDate without afterId resumes after every purchase made at that instant
+        var seekId = afterDate == null ? -1L : afterId != null ? afterId : Long.MAX_VALUE;
+
+        var purchases = repository.findPageAfter(filter.from(), filter.to(), filter.minCents(), filter.maxCents(),
+                seekDate, seekId, PageRequest.of(0, limit));
+
+        var page = PurchasePage.builder().purchases(purchases);
+        if (purchases.size() == limit) {
+            var last = purchases.get(purchases.size() - 1);
+            page.nextAfterDate(last.getTransactionDate()).nextAfterId(last.getTrxId());
+        }
+        return page.build();
+    }
+
+    /**
+     * Hands every purchase matching the filter to {@code consumer} straight off a database cursor. Each purchase
+     * is detached once consumed so the persistence context stays empty however many rows are streamed.
+     */
+    @Transactional(readOnly = true)
+    public void streamPurchases(PurchaseFilter filter, Consumer<PurchaseTrx> consumer) {
+        try (var purchases = repository.streamAll(filter.from(), filter.to(), filter.minCents(), filter.maxCents())) {
+            purchases.forEach(purchaseTrx -> {
+                consumer.accept(purchaseTrx);
+                entityManager.detach(purchaseTrx);
+            });
+        }
+    }
+}
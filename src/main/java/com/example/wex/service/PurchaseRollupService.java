@@ -0,0 +1,120 @@
+package com.example.wex.service;
+
+import com.example.wex.model.PurchaseDailyRollup;
+import com.example.wex.model.PurchaseTrx;
+import com.example.wex.repository.PurchaseDailyRollupRepository;
+import com.example.wex.repository.PurchaseRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps the {@link PurchaseDailyRollup} of every day up to date as purchases are written. Each day's row is
+ * incremented in place, or inserted by the first purchase of the day; days are always updated in date order,
+ * so concurrent writers lock rows in the same order. When two writers both insert the first rollup of a day, one
+ * of them fails on the duplicate key and retries, and its retry increments the row the other inserted.
+ * Called inside a transaction, as the write-behind writer does, rollups commit or roll back with the purchases.
+ * Otherwise they are applied right after the purchases commit, and a day whose update failed is logged and can
+ * be corrected with {@link #rebuild}, which is also how rollups are backfilled for purchases written before them.
+ */
+@Slf4j
+@Service
+public class PurchaseRollupService {
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long RETRY_BACKOFF_MILLIS = 10;
+
+    private final PurchaseDailyRollupRepository rollupRepository;
+    private final PurchaseRepository purchaseRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    public PurchaseRollupService(PurchaseDailyRollupRepository rollupRepository,
+                                 PurchaseRepository purchaseRepository,
+                                 PlatformTransactionManager transactionManager) {
+        this.rollupRepository = rollupRepository;
+        this.purchaseRepository = purchaseRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public void record(Collection<PurchaseTrx> purchases) {
+        var deltas = dailyDeltas(purchases);
+        if (deltas.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            apply(deltas);
+            return;
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> apply(deltas));
+                return;
+            } catch (DataIntegrityViolationException | ConcurrencyFailureException e) {
+                // another writer inserted the first rollup of one of the days, which an increment finds once it commits
+                if (attempt == MAX_ATTEMPTS || !backOff(attempt)) {
+                    log.warn("Could not roll up purchases of {}, rebuild those days: {}", deltas.keySet(), e.getMessage());
+                    return;
+                }
+            } catch (RuntimeException e) {
+                log.warn("Could not roll up purchases of {}, rebuild those days: {}", deltas.keySet(), e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Recomputes the rollups of the days from {@code from} to {@code to} inclusive from their purchases and
+     * returns how many days have purchases. Purchases written to those days while this runs may be missed.
+     */
+    public int rebuild(LocalDate from, LocalDate to) {
+        return transactionTemplate.execute(status -> {
+            rollupRepository.deleteBetween(from, to);
+            var rollups = purchaseRepository.summarizeDays(from.atStartOfDay(), to.plusDays(1).atStartOfDay());
+            rollupRepository.saveAll(rollups);
+            return rollups.size();
+        });
+    }
+
+    private void apply(Map<LocalDate, PurchaseDailyRollup> deltas) {
+        for (var delta : deltas.values()) {
+            int updated = rollupRepository.increment(delta.getRollupDate(), delta.getPurchaseCount(),
+                    delta.getTotalCents(), delta.getMinCents(), delta.getMaxCents());
+            if (updated == 0) {
+                rollupRepository.insert(delta.getRollupDate(), delta.getPurchaseCount(),
+                        delta.getTotalCents(), delta.getMinCents(), delta.getMaxCents());
+            }
+        }
+    }
+
+    private static boolean backOff(int attempt) {
+        try {
+            Thread.sleep(RETRY_BACKOFF_MILLIS * attempt);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static Map<LocalDate, PurchaseDailyRollup> dailyDeltas(Collection<PurchaseTrx> purchases) {
+        Map<LocalDate, PurchaseDailyRollup> deltas = new TreeMap<>();
+        for (var purchaseTrx : purchases) {
+            long cents = purchaseTrx.getAmountInCents();
+            var delta = deltas.computeIfAbsent(purchaseTrx.getTransactionDate().toLocalDate(),
+                    rollupDate -> new PurchaseDailyRollup(rollupDate, 0, 0, Long.MAX_VALUE, Long.MIN_VALUE));
+            delta.setPurchaseCount(delta.getPurchaseCount() + 1);
+            delta.setTotalCents(delta.getTotalCents() + cents);
+            delta.setMinCents(Math.min(delta.getMinCents(), cents));
+            delta.setMaxCents(Math.max(delta.getMaxCents(), cents));
+        }
+        return deltas;
+    }
+}
@@ -1,90 +1,340 @@
 package com.example.wex.service;
 
+import com.example.wex.model.BulkConversionResponse;
+import com.example.wex.model.Money;
+import com.example.wex.model.MultiCurrencyResponse;
+import com.example.wex.model.PurchaseConversion;
 import com.example.wex.model.PurchaseRequest;
 import com.example.wex.model.PurchaseResponse;
 import com.example.wex.model.PurchaseTrx;
+import com.example.wex.model.RateKey;
+import com.example.wex.model.RateQuote;
 import com.example.wex.repository.PurchaseRepository;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
-import org.springframework.util.ObjectUtils;
-import org.springframework.web.reactive.function.client.WebClient;
-import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 import java.io.IOException;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class PurchaseService {
-    private static final String RESPONSE_FIELDS = "record_date,country,currency,exchange_rate";
-    private static final String REQ_FILTER_1 = "record_date:eq:";
-    private static final String REQ_FILTER_2 = "country_currency_desc:eq:";
+    @Value("${fiscaldata.exchangerate.max-parallel-lookups:4}")
+    private int maxParallelLookups;
 
-    @Value("${fiscaldata.exchangerate.url}")
-    private String exchangeRateUrl;
+    @Value("${purchase.listing.max-page-size:1000}")
+    private int maxPageSize;
 
     private final PurchaseRepository repository;
+    private final ExchangeRateIndex rateIndex;
+    private final ExchangeRateCache rateCache;
+    private final ExchangeRateClient exchangeRateClient;
+    private final Scheduler repositoryScheduler;
+    private final MeterRegistry meterRegistry;
+    private final PurchaseConversionService conversionService;
+    private final PurchaseWriteBehind writeBehind;
+    private final PurchaseRollupService rollupService;
 
     public PurchaseResponse getPurchase(long parseLong, String currency, String country) throws IOException {
-        var purchaseTrx = repository.findById(parseLong).orElseThrow();
-        String exchangeRate = getExchangeRate(currency, country, purchaseTrx.getTransactionDate().toLocalDate());
-        if (!ObjectUtils.isEmpty(exchangeRate)){
-            var rate =  Double.parseDouble(exchangeRate);
-            return PurchaseResponse.builder()
-                    .description(purchaseTrx.getDescription())
-                    .trxDate(purchaseTrx.getTransactionDate())
-                    .originalAmt(purchaseTrx.getAmountInUSD())
-                    .exchangeRate(rate)
-                    .convertedAmt(convertAmt(purchaseTrx.getAmountInUSD(),rate))
-                    .build();
+        var materialized = conversionService.findConversion(parseLong, country + '-' + currency);
+        if (materialized.isPresent()) {
+            recordResolution("materialized");
+            return toPurchaseResponse(materialized.get());
+        }
+
+        var purchaseTrx = findPurchase(parseLong).orElseThrow();
+        RateQuote rateQuote = getExchangeRate(currency, country, purchaseTrx.getTransactionDate().toLocalDate());
+        if (rateQuote != null){
+            return toPurchaseResponse(purchaseTrx, rateQuote);
         }
         return null;
     }
 
+    public Mono<PurchaseResponse> getPurchaseAsync(long trxId, String currency, String country) {
+        return Mono.fromCallable(() -> conversionService.findConversion(trxId, country + '-' + currency))
+                .subscribeOn(repositoryScheduler)
+                .flatMap(materialized -> {
+                    if (materialized.isPresent()) {
+                        recordResolution("materialized");
+                        return Mono.just(toPurchaseResponse(materialized.get()));
+                    }
+                    return convertPurchaseAsync(trxId, currency, country);
+                });
+    }
+
+    private Mono<PurchaseResponse> convertPurchaseAsync(long trxId, String currency, String country) {
+        return Mono.fromCallable(() -> findPurchase(trxId).orElseThrow())
+                .subscribeOn(repositoryScheduler)
+                .flatMap(purchaseTrx -> getExchangeRateAsync(currency, country, purchaseTrx.getTransactionDate().toLocalDate())
+                        .map(rateQuote -> toPurchaseResponse(purchaseTrx, rateQuote)));
+    }
+
+    /**
+     * Converts one purchase to every requested Country-Currency, resolving up to
+     * {@code fiscaldata.exchangerate.max-parallel-lookups} rates at the same time.
+     */
+    public Mono<MultiCurrencyResponse> getPurchase(long trxId, List<String> countryCurrencies) {
+        var targets = countryCurrencies.stream().distinct().toList();
+        targets.forEach(PurchaseService::splitCountryCurrency);
+
+        return Mono.fromCallable(() -> findPurchase(trxId).orElseThrow())
+                .subscribeOn(repositoryScheduler)
+                .flatMap(purchaseTrx -> Flux.fromIterable(targets)
+                        .flatMap(target -> {
+                            var countryCurrency = splitCountryCurrency(target);
+                            return getExchangeRateAsync(countryCurrency[1], countryCurrency[0],
+                                    purchaseTrx.getTransactionDate().toLocalDate())
+                                    .map(rateQuote -> Map.entry(target, toPurchaseResponse(purchaseTrx, rateQuote)));
+                        }, maxParallelLookups)
+                        .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                        .map(conversions -> toMultiCurrencyResponse(purchaseTrx, targets, conversions)));
+    }
+
+    /**
+     * Converts the purchases of up to {@code purchase.listing.max-page-size} transaction ids, including purchases
+     * still queued by write-behind.
+     */
+    public BulkConversionResponse getPurchases(List<Long> trxIds, String currency, String country) throws IOException {
+        if (trxIds.size() > maxPageSize) {
+            throw new IllegalArgumentException("At most " + maxPageSize + " transaction ids can be converted at once");
+        }
+        List<PurchaseTrx> purchases = new ArrayList<>(repository.findAllByIdCached(trxIds));
+        var foundIds = purchases.stream().map(PurchaseTrx::getTrxId).collect(Collectors.toSet());
+        List<Long> notFoundIds = new ArrayList<>();
+        for (var trxId : new LinkedHashSet<>(trxIds)) {
+            if (!foundIds.contains(trxId)) {
+                writeBehind.findPending(trxId).ifPresentOrElse(purchases::add, () -> notFoundIds.add(trxId));
+            }
+        }
+        var response = convertPurchases(purchases, currency, country);
+        response.setNotFoundIds(notFoundIds);
+        return response;
+    }
+
+    /**
+     * Converts one page of the purchases made from {@code from} to {@code to}, seeking past the (afterDate,
+     * afterId) cursor of the previous page like {@link PurchaseListingService#listPurchases}, so a wide range
+     * never loads or caches more than {@code purchase.listing.max-page-size} purchases at once.
+     */
+    public BulkConversionResponse getPurchases(LocalDateTime from, LocalDateTime to, LocalDateTime afterDate, Long afterId,
+                                               int pageSize, String currency, String country) throws IOException {
+        var limit = Math.min(Math.max(pageSize, 1), maxPageSize);
+        var seekDate = afterDate != null ? afterDate : from;
+        var seekId = afterDate == null ? -1L : afterId != null ? afterId : Long.MAX_VALUE;
+
+        var purchases = repository.findPageAfter(from, to, null, null, seekDate, seekId, PageRequest.of(0, limit));
+
+        var response = convertPurchases(purchases, currency, country);
+        if (purchases.size() == limit) {
+            var last = purchases.get(purchases.size() - 1);
+            response.setNextAfterDate(last.getTransactionDate());
+            response.setNextAfterId(last.getTrxId());
+        }
+        return response;
+    }
+
+    /**
+     * Saves the purchase, or with write-behind enabled, journals and queues it and returns without waiting for
+     * the insert; its conversions are then materialized once the writer commits it.
+     */
     public PurchaseTrx createPurchase(PurchaseRequest purchaseRequest) {
-       var purchaseTrx =  PurchaseTrx.builder()
-               .amountInUSD(convertAmt(new BigDecimal(purchaseRequest.getAmount()), 1.0))
+       if (writeBehind.isEnabled()) {
+           return writeBehind.submit(toPurchaseTrx(purchaseRequest));
+       }
+       var purchaseTrx = repository.save(toPurchaseTrx(purchaseRequest));
+       rollupService.record(List.of(purchaseTrx));
+       conversionService.materializeAsync(purchaseTrx);
+       return purchaseTrx;
+    }
+
+    public PurchaseTrx toPurchaseTrx(PurchaseRequest purchaseRequest) {
+       return PurchaseTrx.builder()
+               .amountInCents(Money.parseCents(purchaseRequest.getAmount()))
                .description(purchaseRequest.getDescription())
                .transactionDate(LocalDateTime.parse(purchaseRequest.getTrxDate()))
                .build();
+    }
+
+    /**
+     * A purchase acknowledged by the write-behind path is served from its queue until the writer commits it.
+     */
+    private Optional<PurchaseTrx> findPurchase(long trxId) {
+        return repository.findById(trxId).or(() -> writeBehind.findPending(trxId));
+    }
+
+    /**
+     * Rate that purchases made on {@code purchaseDate} convert at, or null when none was published within the
+     * lookback window.
+     */
+    public RateQuote getExchangeRate(String currency, String country, LocalDate purchaseDate) throws IOException {
+        var key = new RateKey(country, currency, purchaseDate);
+        long indexedRate = rateIndex.floorRate(key.countryCurrency(), purchaseDate);
+        if (indexedRate != ExchangeRateIndex.NO_RATE) {
+            recordResolution("index");
+            return RateQuote.fresh(indexedRate);
+        }
+
+        var cachedRate = rateCache.get(key);
+        if (cachedRate != null) {
+            recordResolution("cache");
+            return RateQuote.fresh(cachedRate);
+        }
+
+        try {
+            var exchangeRate = fetchExchangeRate(key);
+            if (exchangeRate != null) {
+                recordResolution("upstream");
+                rateCache.put(key, exchangeRate);
+                return RateQuote.fresh(exchangeRate);
+            }
+            recordResolution("missing");
+            return null;
+        } catch (ExchangeRateUnavailableException e) {
+            var lastKnownGood = rateCache.getLastKnownGood(key);
+            if (lastKnownGood == null) {
+                recordResolution("unavailable");
+                throw e;
+            }
+            log.warn("Serving stale exchange rate for {}: {}", key, e.getMessage());
+            recordResolution("stale");
+            return RateQuote.stale(lastKnownGood);
+        }
+    }
+
+    private BulkConversionResponse convertPurchases(List<PurchaseTrx> purchases, String currency, String country) throws IOException {
+        Map<LocalDate, RateQuote> ratesByDate = new HashMap<>();
+        List<PurchaseResponse> conversions = new ArrayList<>(purchases.size());
+        List<Long> missingRateIds = new ArrayList<>();
+        for (var purchaseTrx : purchases) {
+            var purchaseDate = purchaseTrx.getTransactionDate().toLocalDate();
+            if (!ratesByDate.containsKey(purchaseDate)) {
+                ratesByDate.put(purchaseDate, getExchangeRate(currency, country, purchaseDate));
+            }
+            var rateQuote = ratesByDate.get(purchaseDate);
+            if (rateQuote != null) {
+                conversions.add(toPurchaseResponse(purchaseTrx, rateQuote));
+            } else {
+                missingRateIds.add(purchaseTrx.getTrxId());
+            }
+        }
+        return BulkConversionResponse.builder()
+                .conversions(conversions)
+                .missingRateIds(missingRateIds)
+                .notFoundIds(List.of())
+                .build();
+    }
 
-       return repository.save(purchaseTrx);
+    private MultiCurrencyResponse toMultiCurrencyResponse(PurchaseTrx purchaseTrx, List<String> targets,
+                                                          Map<String, PurchaseResponse> conversions) {
+        Map<String, PurchaseResponse> orderedConversions = new LinkedHashMap<>();
+        List<String> missingRates = new ArrayList<>();
+        for (var target : targets) {
+            if (conversions.containsKey(target)) {
+                orderedConversions.put(target, conversions.get(target));
+            } else {
+                missingRates.add(target);
+            }
+        }
+        return MultiCurrencyResponse.builder()
+                .transactionId(purchaseTrx.getTrxId())
+                .description(purchaseTrx.getDescription())
+                .trxDate(purchaseTrx.getTransactionDate())
+                .originalAmt(Money.toAmount(purchaseTrx.getAmountInCents()))
+                .conversions(orderedConversions)
+                .missingRates(missingRates)
+                .build();
+    }
+
+    private static String[] splitCountryCurrency(String countryCurrency) {
+        int separator = countryCurrency.lastIndexOf('-');
+        if (separator <= 0 || separator == countryCurrency.length() - 1) {
+            throw new IllegalArgumentException("Expected Country-Currency but got " + countryCurrency);
+        }
+        return new String[]{countryCurrency.substring(0, separator), countryCurrency.substring(separator + 1)};
     }
 
-    private String getExchangeRate(String currency, String country, LocalDate recordDate) throws JsonProcessingException {
-        MultiValueMap<String,String> queryParams =  new LinkedMultiValueMap<>();
-        queryParams.add("format","json");
-        queryParams.add("fields",RESPONSE_FIELDS);
-        queryParams.add("filter", String.join(",",
-                REQ_FILTER_1+recordDate, REQ_FILTER_2+country+'-'+currency));
+    private Mono<RateQuote> getExchangeRateAsync(String currency, String country, LocalDate purchaseDate) {
+        var key = new RateKey(country, currency, purchaseDate);
+        long indexedRate = rateIndex.floorRate(key.countryCurrency(), purchaseDate);
+        if (indexedRate != ExchangeRateIndex.NO_RATE) {
+            recordResolution("index");
+            return Mono.just(RateQuote.fresh(indexedRate));
+        }
 
-        var url = UriComponentsBuilder.fromHttpUrl(exchangeRateUrl)
-                .queryParams(queryParams)
-                .toUriString();
+        var cachedRate = rateCache.get(key);
+        if (cachedRate != null) {
+            recordResolution("cache");
+            return Mono.just(RateQuote.fresh(cachedRate));
+        }
 
-        var response = WebClient.create()
-                .get()
-                .uri(url)
-                .retrieve()
-                .bodyToMono(String.class)
-                .block();
+        return exchangeRateClient.latestRate(key)
+                .map(rateRecord -> Money.toScaledRate(rateRecord.exchangeRate()))
+                .doOnNext(exchangeRate -> rateCache.put(key, exchangeRate))
+                .map(RateQuote::fresh)
+                .doOnSuccess(rateQuote -> recordResolution(rateQuote != null ? "upstream" : "missing"))
+                .onErrorResume(ExchangeRateUnavailableException.class, e -> {
+                    var lastKnownGood = rateCache.getLastKnownGood(key);
+                    if (lastKnownGood == null) {
+                        recordResolution("unavailable");
+                        return Mono.error(e);
+                    }
+                    log.warn("Serving stale exchange rate for {}: {}", key, e.getMessage());
+                    recordResolution("stale");
+                    return Mono.just(RateQuote.stale(lastKnownGood));
+                });
+    }
+
+    /**
+     * Counts where each exchange rate came from, so the index and cache hit ratios can be read off
+     * {@code purchase.exchange-rate.resolutions} by source.
+     */
+    private void recordResolution(String source) {
+        meterRegistry.counter("purchase.exchange-rate.resolutions", "source", source).increment();
+    }
+
+    private Long fetchExchangeRate(RateKey key) throws IOException {
+        var rateRecord = exchangeRateClient.fetchLatestRate(key);
+        return rateRecord != null ? Money.toScaledRate(rateRecord.exchangeRate()) : null;
+    }
 
-        return Optional.ofNullable(new ObjectMapper().readTree(response).get("data"))
-                .map(fiscaldata -> fiscaldata.get(0))
-                .map(rateData -> rateData.get("exchange_rate").asText())
-                .orElse(null);
+    private PurchaseResponse toPurchaseResponse(PurchaseConversion conversion) {
+        var purchaseTrx = conversion.getPurchase();
+        return PurchaseResponse.builder()
+                .transactionId(purchaseTrx.getTrxId())
+                .description(purchaseTrx.getDescription())
+                .trxDate(purchaseTrx.getTransactionDate())
+                .originalAmt(Money.toAmount(purchaseTrx.getAmountInCents()))
+                .exchangeRate(Money.toRate(conversion.getScaledRate()))
+                .convertedAmt(Money.toAmount(conversion.getConvertedCents()))
+                .build();
     }
 
-    private BigDecimal convertAmt(BigDecimal amountInUSD, double rate) {
-        return amountInUSD.multiply(BigDecimal.valueOf(rate)).setScale(2, RoundingMode.HALF_UP);
+    private PurchaseResponse toPurchaseResponse(PurchaseTrx purchaseTrx, RateQuote rateQuote) {
+        return PurchaseResponse.builder()
+                .transactionId(purchaseTrx.getTrxId())
+                .description(purchaseTrx.getDescription())
+                .trxDate(purchaseTrx.getTransactionDate())
+                .originalAmt(Money.toAmount(purchaseTrx.getAmountInCents()))
+                .exchangeRate(Money.toRate(rateQuote.scaledRate()))
+                .convertedAmt(Money.toAmount(Money.convert(purchaseTrx.getAmountInCents(), rateQuote.scaledRate())))
+                .stale(rateQuote.stale())
+                .build();
     }
 }
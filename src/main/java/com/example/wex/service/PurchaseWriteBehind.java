@@ -0,0 +1,370 @@
+package com.example.wex.service;
+
+import com.example.wex.model.PurchaseTrx;
+import com.example.wex.repository.PurchaseRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional write-behind path for single purchase posts, enabled with {@code purchase.write-behind.enabled}.
+ * A purchase gets its id from the {@link PurchaseIdAllocator}, is appended to the {@link PurchaseJournal} and
+ * queued, and is acknowledged as soon as the journal is synced. A single writer drains the queue and inserts
+ * everything waiting in one JDBC batch per transaction, so commit cost is shared by the whole group.
+ * The queue holds at most {@code purchase.write-behind.queue-capacity} uncommitted purchases; posts wait up to
+ * {@code purchase.write-behind.offer-timeout} for room and are then rejected.
+ * Purchases journaled but not committed before a crash are inserted on the next start, before any new post
+ * is accepted. Until the writer commits it, a queued purchase is served from memory by {@link #findPending}.
+ * A batch the database rejects for a constraint is split until the purchases it cannot insert are isolated; the
+ * rest are inserted, and those are parked in a separate journal under {@code parked} in the journal directory,
+ * so one bad purchase never stalls the writer. Other failures are retried until they clear.
+ */
+@Slf4j
+@Component
+public class PurchaseWriteBehind implements SmartLifecycle {
+    private static final String INSERT_SQL =
+            "insert into purchase_trx (trx_id, description, transaction_date, amount_in_cents) values (?, ?, ?, ?)";
+    private static final String PARKED_DIRECTORY = "parked";
+    private static final String EXISTING_IDS_SQL = "select trx_id from purchase_trx where trx_id in (:trxIds)";
+
+    private record Pending(long seq, PurchaseTrx purchaseTrx) {
+    }
+
+    private final PurchaseIdAllocator idAllocator;
+    private final PurchaseConversionService conversionService;
+    private final PurchaseRollupService rollupService;
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManagerFactory entityManagerFactory;
+    private final boolean enabled;
+    private final Path journalDirectory;
+    private final DataSize journalSegmentSize;
+    private final int maxBatchSize;
+    private final Duration offerTimeout;
+    private final Duration retryBackoff;
+
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Map<Long, PurchaseTrx> pending = new ConcurrentHashMap<>();
+    private final Semaphore slots;
+    private final Object enqueueLock = new Object();
+    private final DistributionSummary batchSizes;
+    private final Counter parkedPurchases;
+
+    private PurchaseJournal journal;
+    private PurchaseJournal parkedJournal;
+    private Thread writer;
+    private volatile boolean running;
+    private volatile long committedSeq;
+
+    public PurchaseWriteBehind(PurchaseIdAllocator idAllocator,
+                               PurchaseConversionService conversionService,
+                               PurchaseRollupService rollupService,
+                               JdbcTemplate jdbcTemplate,
+                               PlatformTransactionManager transactionManager,
+                               EntityManagerFactory entityManagerFactory,
+                               MeterRegistry meterRegistry,
+                               @Value("${purchase.write-behind.enabled:false}") boolean enabled,
+                               @Value("${purchase.write-behind.journal-dir:./data/journal}") Path journalDirectory,
+                               @Value("${purchase.write-behind.journal-segment-size:64MB}") DataSize journalSegmentSize,
+                               @Value("${purchase.write-behind.queue-capacity:10000}") int queueCapacity,
+                               @Value("${purchase.write-behind.max-batch-size:500}") int maxBatchSize,
+                               @Value("${purchase.write-behind.offer-timeout:PT1S}") Duration offerTimeout,
+                               @Value("${purchase.write-behind.retry-backoff:PT1S}") Duration retryBackoff) {
+        this.idAllocator = idAllocator;
+        this.conversionService = conversionService;
+        this.rollupService = rollupService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.entityManagerFactory = entityManagerFactory;
+        this.enabled = enabled;
+        this.journalDirectory = journalDirectory;
+        this.journalSegmentSize = journalSegmentSize;
+        this.slots = new Semaphore(queueCapacity);
+        this.maxBatchSize = maxBatchSize;
+        this.offerTimeout = offerTimeout;
+        this.retryBackoff = retryBackoff;
+        this.batchSizes = DistributionSummary.builder("purchase.write-behind.batch.size")
+                .description("Purchases inserted per write-behind commit")
+                .register(meterRegistry);
+        this.parkedPurchases = Counter.builder("purchase.write-behind.parked")
+                .description("Purchases the database rejected, parked for repair instead of inserted")
+                .register(meterRegistry);
+        Gauge.builder("purchase.write-behind.queue.size", queue, BlockingQueue::size)
+                .description("Purchases acknowledged but not yet committed")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Assigns {@code purchaseTrx} its id and returns it once the purchase is durable in the journal.
+     *
+     * @throws RejectedExecutionException when the queue stays full for the offer timeout, or the writer is stopped
+     */
+    public PurchaseTrx submit(PurchaseTrx purchaseTrx) {
+        acquireSlot();
+        long seq;
+        try {
+            purchaseTrx.setTrxId(idAllocator.next());
+            // one lock for journal and queue keeps them in the same order, so committing a batch commits a prefix
+            synchronized (enqueueLock) {
+                if (!running) {
+                    throw new RejectedExecutionException("Purchase writer is not running");
+                }
+                seq = journal.append(purchaseTrx);
+                pending.put(purchaseTrx.getTrxId(), purchaseTrx);
+                queue.add(new Pending(seq, purchaseTrx));
+            }
+        } catch (IOException e) {
+            slots.release();
+            throw new UncheckedIOException("Could not journal purchase", e);
+        } catch (RuntimeException e) {
+            slots.release();
+            throw e;
+        }
+
+        try {
+            journal.sync(seq);
+        } catch (IOException e) {
+            // already queued and committed by the writer like any other, so failing the post would invite a duplicate
+            log.warn("Could not sync purchase journal, purchase {} is queued but not durable until committed: {}",
+                    purchaseTrx.getTrxId(), e.getMessage());
+        }
+        return purchaseTrx;
+    }
+
+    public Optional<PurchaseTrx> findPending(long trxId) {
+        return Optional.ofNullable(pending.get(trxId));
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            journal = new PurchaseJournal(journalDirectory, journalSegmentSize.toBytes());
+            replay(journal.recover());
+            journal.discardRecovered();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not recover purchase journal in " + journalDirectory, e);
+        }
+        running = true;
+        writer = Thread.ofPlatform().name("purchase-write-behind").start(this::drain);
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        synchronized (enqueueLock) {
+            running = false;
+        }
+        try {
+            writer.join();
+            journal.close(committedSeq);
+            if (parkedJournal != null) {
+                parkedJournal.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.warn("Could not close purchase journal: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Starts ahead of, and so stops after, the web server, so the journal is replayed before the first post and
+     * the queue is drained after the last one.
+     */
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+
+    private void drain() {
+        List<Pending> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                var first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - 1);
+                var purchases = batch.stream().map(Pending::purchaseTrx).toList();
+                List<PurchaseTrx> parked = new ArrayList<>();
+                if (!write(purchases, parked)) {
+                    // left in the journal, so the next start inserts them
+                    return;
+                }
+                committedSeq = batch.get(batch.size() - 1).seq();
+                purchases.forEach(purchaseTrx -> pending.remove(purchaseTrx.getTrxId()));
+                slots.release(batch.size());
+                journal.committed(committedSeq);
+                conversionService.materializeAsync(parked.isEmpty() ? purchases
+                        : purchases.stream().filter(purchaseTrx -> !parked.contains(purchaseTrx)).toList());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                log.warn("Could not delete committed purchase journal segments: {}", e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Inserts {@code purchases} in one transaction, retrying while the writer is running. A failed commit may
+     * still have landed, so retries only insert the purchases that are not there yet. Purchases rejected for a
+     * constraint are added to {@code parked} instead.
+     */
+    private boolean write(List<PurchaseTrx> purchases, List<PurchaseTrx> parked) throws InterruptedException {
+        try {
+            insert(purchases);
+            batchSizes.record(purchases.size());
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            log.warn("Could not write {} purchases, isolating the rejected ones: {}", purchases.size(), e.getMessage());
+        } catch (RuntimeException e) {
+            log.warn("Could not write {} purchases, retrying: {}", purchases.size(), e.getMessage());
+            Thread.sleep(retryBackoff.toMillis());
+        }
+        while (true) {
+            try {
+                parked.clear();
+                insertIsolating(purchases, parked);
+                batchSizes.record(purchases.size() - parked.size());
+                return true;
+            } catch (RuntimeException e) {
+                if (!running) {
+                    log.error("Could not write {} purchases before shutdown, they stay journaled", purchases.size(), e);
+                    return false;
+                }
+                log.warn("Could not write {} purchases, retrying: {}", purchases.size(), e.getMessage());
+            }
+            Thread.sleep(retryBackoff.toMillis());
+        }
+    }
+
+    /**
+     * Inserts the missing ones of {@code purchases}, halving a batch the database rejects for a constraint until
+     * the purchases it cannot insert are isolated, and parks those. Other failures are thrown for the caller to
+     * retry; what was inserted by then is skipped on the retry.
+     */
+    private void insertIsolating(List<PurchaseTrx> purchases, List<PurchaseTrx> parked) {
+        try {
+            insertMissing(purchases);
+        } catch (DataIntegrityViolationException e) {
+            if (purchases.size() == 1) {
+                park(purchases.get(0), e);
+                parked.add(purchases.get(0));
+                return;
+            }
+            int half = purchases.size() / 2;
+            insertIsolating(purchases.subList(0, half), parked);
+            insertIsolating(purchases.subList(half, purchases.size()), parked);
+        }
+    }
+
+    private void park(PurchaseTrx purchaseTrx, DataIntegrityViolationException cause) {
+        try {
+            if (parkedJournal == null) {
+                parkedJournal = new PurchaseJournal(journalDirectory.resolve(PARKED_DIRECTORY), journalSegmentSize.toBytes());
+            }
+            parkedJournal.sync(parkedJournal.append(purchaseTrx));
+        } catch (IOException e) {
+            // parking is retried with the rest of the batch
+            throw new UncheckedIOException("Could not park purchase " + purchaseTrx.getTrxId(), e);
+        }
+        parkedPurchases.increment();
+        log.error("Parked purchase {} the database rejected: {}", purchaseTrx.getTrxId(), cause.getMessage());
+    }
+
+    private void replay(List<PurchaseTrx> purchases) {
+        List<PurchaseTrx> parked = new ArrayList<>();
+        for (int from = 0; from < purchases.size(); from += maxBatchSize) {
+            insertIsolating(purchases.subList(from, Math.min(from + maxBatchSize, purchases.size())), parked);
+        }
+        if (!purchases.isEmpty()) {
+            log.info("Replayed {} journaled purchases", purchases.size());
+        }
+    }
+
+    private void insertMissing(List<PurchaseTrx> purchases) {
+        var existingIds = new HashSet<>(namedParameterJdbcTemplate.queryForList(EXISTING_IDS_SQL,
+                new MapSqlParameterSource("trxIds", purchases.stream().map(PurchaseTrx::getTrxId).toList()),
+                Long.class));
+        var missing = purchases.stream().filter(purchaseTrx -> !existingIds.contains(purchaseTrx.getTrxId())).toList();
+        if (!missing.isEmpty()) {
+            insert(missing);
+        }
+    }
+
+    private void insert(List<PurchaseTrx> purchases) {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(INSERT_SQL, purchases, purchases.size(), (statement, purchaseTrx) -> {
+                statement.setLong(1, purchaseTrx.getTrxId());
+                statement.setString(2, purchaseTrx.getDescription());
+                statement.setObject(3, purchaseTrx.getTransactionDate());
+                statement.setLong(4, purchaseTrx.getAmountInCents());
+            });
+            // in the same transaction, so a retried or replayed batch is never rolled up twice
+            rollupService.record(purchases);
+        });
+        // the inserts bypass Hibernate, so cached purchase queries would not see them
+        entityManagerFactory.getCache().unwrap(org.hibernate.Cache.class)
+                .evictQueryRegion(PurchaseRepository.QUERY_CACHE_REGION);
+    }
+
+    private void acquireSlot() {
+        try {
+            if (!slots.tryAcquire(offerTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new RejectedExecutionException("Purchase write-behind queue is full");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for the purchase write-behind queue", e);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+-- sequences step by the allocationSize of the entity generators
+create sequence if not exists purchase_trx_seq start with 1 increment by 50;
+create sequence if not exists purchase_conversion_seq start with 1 increment by 50;
+create sequence if not exists exchange_rate_seq start with 1 increment by 50;
+
+create table if not exists purchase_trx (
+    trx_id bigint not null primary key,
+    description varchar(50),
+    transaction_date timestamp(6) not null,
+    amount_in_cents bigint not null
+);
+create index if not exists idx_purchase_trx_date_id on purchase_trx (transaction_date, trx_id);
+create index if not exists idx_purchase_trx_amount on purchase_trx (amount_in_cents);
+
+create table if not exists purchase_conversion (
+    id bigint not null primary key,
+    trx_id bigint not null references purchase_trx (trx_id),
+    country_currency varchar(64) not null,
+    scaled_rate bigint not null,
+    converted_cents bigint not null,
+    constraint uk_purchase_conversion_trx_currency unique (trx_id, country_currency)
+);
+
+create table if not exists exchange_rate (
+    id bigint not null primary key,
+    country_currency_desc varchar(100) not null,
+    record_date date not null,
+    exchange_rate numeric(19, 6) not null,
+    constraint uk_exchange_rate_currency_date unique (country_currency_desc, record_date)
+);
+-- tables created before the unique constraint: drop duplicate rates, keeping the first stored, then enforce it
+delete from exchange_rate duplicate using exchange_rate kept
+    where duplicate.country_currency_desc = kept.country_currency_desc
+      and duplicate.record_date = kept.record_date
+      and duplicate.id > kept.id;
+create unique index if not exists uk_exchange_rate_currency_date on exchange_rate (country_currency_desc, record_date);
+drop index if exists idx_exchange_rate_currency_date;
+
+create table if not exists idempotency_key (
+    idempotency_key varchar(255) not null primary key,
+    trx_id bigint,
+    created_at timestamp(6) not null
+);
+-- keys are claimed before their purchase is created, without a transaction id
+alter table idempotency_key alter column trx_id drop not null;
+create index if not exists idx_idempotency_key_created_at on idempotency_key (created_at);
+
+create table if not exists purchase_daily_rollup (
+    rollup_date date not null primary key,
+    purchase_count bigint not null,
+    total_cents bigint not null,
+    min_cents bigint not null,
+    max_cents bigint not null
+);
@@ -0,0 +1,122 @@
+package com.example.wex;
+
+import com.example.wex.model.RateKey;
+import com.example.wex.service.ExchangeRateCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ExchangeRateCacheTest {
+    private static final RateKey TEST_KEY = new RateKey("Mexico", "Peso", LocalDate.parse("2021-03-31"));
+
+    @Test
+    void testGet_Returns_Cached_Rate_And_Counts_Hits_Misses(){
+        // Assign
+        var cacheInTest = new ExchangeRateCache(10, Duration.ofHours(1), 6);
+
+        // Action
+        var miss = cacheInTest.get(TEST_KEY);
+        cacheInTest.put(TEST_KEY, 20_518_000L);
+        var hit = cacheInTest.get(TEST_KEY);
+
+        // Assert
+        assertAll("ExchangeRateCache",
+                () -> assertNull(miss),
+                () -> assertEquals(20_518_000L, hit),
+                () -> assertEquals(1, cacheInTest.stats().hitCount()),
+                () -> assertEquals(1, cacheInTest.stats().missCount())
+        );
+    }
+
+    @Test
+    void testPut_Evicts_When_MaxSize_Exceeded(){
+        // Assign
+        var cacheInTest = new ExchangeRateCache(2, Duration.ofHours(1), 6);
+
+        // Action
+        for (int day = 1; day <= 5; day++) {
+            cacheInTest.put(new RateKey("Canada", "Dollar", LocalDate.of(2023, 3, day)), 1_355_000L);
+        }
+
+        // Assert
+        assertEquals(2, cacheInTest.size());
+        assertEquals(3, cacheInTest.stats().evictionCount());
+    }
+
+    @Test
+    void testGet_Returns_Null_After_Ttl_Expiry() throws InterruptedException {
+        // Assign
+        var cacheInTest = new ExchangeRateCache(10, Duration.ofMillis(50), 6);
+        cacheInTest.put(TEST_KEY, 20_518_000L);
+
+        // Action
+        Thread.sleep(100);
+
+        // Assert
+        assertNull(cacheInTest.get(TEST_KEY));
+    }
+
+    @Test
+    void testGetLastKnownGood_Survives_Ttl_Expiry() throws InterruptedException {
+        // Assign
+        var cacheInTest = new ExchangeRateCache(10, Duration.ofMillis(50), 6);
+        cacheInTest.put(TEST_KEY, 20_518_000L);
+
+        // Action
+        Thread.sleep(100);
+
+        // Assert
+        assertNull(cacheInTest.get(TEST_KEY));
+        assertEquals(20_518_000L, cacheInTest.getLastKnownGood(TEST_KEY));
+    }
+
+    @Test
+    void testGetLastKnownGood_Serves_Floor_Rate_Within_Lookback(){
+        // Assign
+        var cacheInTest = new ExchangeRateCache(10, Duration.ofHours(1), 6);
+        cacheInTest.put(TEST_KEY, 20_518_000L);
+
+        // Action
+        var laterDay = cacheInTest.getLastKnownGood(new RateKey("Mexico", "Peso", LocalDate.parse("2021-05-15")));
+        var pastLookback = cacheInTest.getLastKnownGood(new RateKey("Mexico", "Peso", LocalDate.parse("2021-10-01")));
+        var earlierDay = cacheInTest.getLastKnownGood(new RateKey("Mexico", "Peso", LocalDate.parse("2021-03-30")));
+        var otherCurrency = cacheInTest.getLastKnownGood(new RateKey("Canada", "Dollar", LocalDate.parse("2021-05-15")));
+
+        // Assert
+        assertAll("LastKnownGood",
+                () -> assertEquals(20_518_000L, laterDay),
+                () -> assertNull(pastLookback),
+                () -> assertNull(earlierDay),
+                () -> assertNull(otherCurrency)
+        );
+    }
+
+    @Test
+    void testBindTo_Publishes_Cache_Hit_And_Miss_Metrics(){
+        // Assign
+        var cacheInTest = new ExchangeRateCache(10, Duration.ofHours(1), 6);
+        var meterRegistry = new SimpleMeterRegistry();
+        cacheInTest.bindTo(meterRegistry);
+
+        // Action
+        cacheInTest.get(TEST_KEY);
+        cacheInTest.put(TEST_KEY, 20_518_000L);
+        cacheInTest.get(TEST_KEY);
+
+        // Assert
+        assertAll("CacheMetrics",
+                () -> assertEquals(1, meterRegistry.get("cache.gets").tags("cache", "exchangeRates", "result", "hit")
+                        .functionCounter().count()),
+                () -> assertEquals(1, meterRegistry.get("cache.gets").tags("cache", "exchangeRates", "result", "miss")
+                        .functionCounter().count()),
+                () -> assertEquals(1, meterRegistry.get("cache.size").tags("cache", "exchangeRatesLastKnownGood")
+                        .gauge().value())
+        );
+    }
+}
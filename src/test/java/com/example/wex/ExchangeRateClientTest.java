@@ -0,0 +1,117 @@
+package com.example.wex;
+
+import com.example.wex.model.RateKey;
+import com.example.wex.service.ExchangeRateClient;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ExchangeRateClientTest {
+    private ExchangeRateClient clientInTest;
+
+    @BeforeEach
+    void setUp(){
+        clientInTest = new ExchangeRateClient(WebClient.create(), new ObjectMapper().findAndRegisterModules(),
+                FiscalDataStubServer.defaultResilience(), new SimpleMeterRegistry(), 6);
+    }
+
+    @Test
+    void testParsePage_Returns_Typed_Records_And_Total_Pages() throws IOException {
+        // Assign
+        var body = """
+                {
+                  "data": [
+                    {"record_date": "2023-03-31", "country_currency_desc": "Canada-Dollar", "exchange_rate": "1.355"},
+                    {"record_date": "2022-12-31", "country_currency_desc": "Canada-Dollar", "exchange_rate": "1.354"}
+                  ],
+                  "meta": {"count": 2, "labels": {"record_date": "Record Date"}, "total-count": 2, "total-pages": 3},
+                  "links": {"self": "&page%5Bnumber%5D=1&page%5Bsize%5D=2", "next": null}
+                }""";
+
+        // Action
+        var page = clientInTest.parsePage(body.getBytes(StandardCharsets.UTF_8));
+
+        // Assert
+        assertAll("ExchangeRatePage",
+                () -> assertEquals(3, page.totalPages()),
+                () -> assertEquals(2, page.data().size()),
+                () -> assertEquals(LocalDate.parse("2023-03-31"), page.data().get(0).recordDate()),
+                () -> assertEquals("Canada-Dollar", page.data().get(0).countryCurrencyDesc()),
+                () -> assertEquals(new BigDecimal("1.355"), page.data().get(0).exchangeRate())
+        );
+    }
+
+    @Test
+    void testParsePage_Returns_Empty_Page_No_Data() throws IOException {
+        // Action
+        var page = clientInTest.parsePage("{\"data\":[],\"meta\":{\"total-pages\":0}}".getBytes(StandardCharsets.UTF_8));
+
+        // Assert
+        assertTrue(page.data().isEmpty());
+        assertEquals(0, page.totalPages());
+    }
+
+    @Test
+    void testParsePage_Exception_Not_A_Response_Object() {
+        // Action & Assert
+        assertThrows(JsonParseException.class, () -> clientInTest.parsePage("[]".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testLatestRate_Concurrent_Identical_Lookups_Share_One_Upstream_Call() {
+        // Assign
+        var upstreamCalls = new AtomicInteger();
+        var webClient = WebClient.builder()
+                .exchangeFunction(request -> {
+                    upstreamCalls.incrementAndGet();
+                    return Mono.delay(Duration.ofMillis(200))
+                            .thenReturn(ClientResponse.create(HttpStatus.OK)
+                                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                                    .body("""
+                                            {"data":[{"record_date":"2021-03-31","country_currency_desc":"Mexico-Peso","exchange_rate":"20.518"}],
+                                             "meta":{"total-pages":1}}""")
+                                    .build());
+                })
+                .build();
+        clientInTest = new ExchangeRateClient(webClient, new ObjectMapper().findAndRegisterModules(),
+                FiscalDataStubServer.defaultResilience(), new SimpleMeterRegistry(), 6);
+        var key = new RateKey("Mexico", "Peso", LocalDate.parse("2021-05-15"));
+
+        // Action
+        var rates = Flux.range(0, 20)
+                .flatMap(caller -> clientInTest.latestRate(key).subscribeOn(Schedulers.parallel()))
+                .collectList()
+                .block();
+        var laterRate = clientInTest.latestRate(key).block();
+
+        // Assert
+        assertAll("SingleFlight",
+                () -> assertEquals(20, rates.size()),
+                () -> assertTrue(rates.stream().allMatch(rate -> new BigDecimal("20.518").equals(rate.exchangeRate()))),
+                () -> assertEquals(new BigDecimal("20.518"), laterRate.exchangeRate()),
+                () -> assertEquals(2, upstreamCalls.get())
+        );
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.wex;
+
+import com.example.wex.model.ExchangeRate;
+import com.example.wex.model.Money;
+import com.example.wex.service.ExchangeRateIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ExchangeRateIndexTest {
+    private ExchangeRateIndex indexInTest;
+
+    @BeforeEach
+    void setUp(){
+        indexInTest = new ExchangeRateIndex(6);
+        indexInTest.load(List.of(
+                rate("Canada-Dollar", "2022-12-31", "1.354"),
+                rate("Canada-Dollar", "2023-03-31", "1.355"),
+                rate("Canada-Dollar", "2022-09-30", "1.368"),
+                rate("Mexico-Peso", "2023-03-31", "18.1")
+        ));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"2023-03-31,1.355", "2023-03-30,1.354", "2023-06-15,1.355", "2022-10-01,1.368"})
+    void testFloorRate_Returns_Latest_Rate_On_Or_Before_Date(String purchaseDate, String expectedRate){
+        // Action
+        var rate = indexInTest.floorRate("Canada-Dollar", LocalDate.parse(purchaseDate));
+
+        // Assert
+        assertEquals(Money.toScaledRate(new BigDecimal(expectedRate)), rate);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"2022-09-29", "2023-10-01"})
+    void testFloorRate_Returns_No_Rate_Outside_Lookback_Window(String purchaseDate){
+        // Action
+        var rate = indexInTest.floorRate("Canada-Dollar", LocalDate.parse(purchaseDate));
+
+        // Assert
+        assertEquals(ExchangeRateIndex.NO_RATE, rate);
+    }
+
+    @Test
+    void testFloorRate_Returns_No_Rate_Unknown_Currency(){
+        // Action
+        var rate = indexInTest.floorRate("Iraq-Dinar", LocalDate.parse("2023-03-31"));
+
+        // Assert
+        assertEquals(ExchangeRateIndex.NO_RATE, rate);
+    }
+
+    @Test
+    void testOldestUnsettledDate_Returns_Earliest_Latest_Rate_Date(){
+        // Assign
+        indexInTest.load(List.of(
+                rate("Canada-Dollar", "2023-03-31", "1.355"),
+                rate("Mexico-Peso", "2023-03-31", "18.1"),
+                rate("Mexico-Peso", "2023-06-30", "17.1")));
+
+        // Action
+        var oldest = indexInTest.oldestUnsettledDate(List.of("Canada-Dollar", "Mexico-Peso"));
+
+        // Assert
+        assertEquals(LocalDate.parse("2023-03-31"), oldest);
+    }
+
+    @Test
+    void testOldestUnsettledDate_Returns_Null_Currency_Without_Rates(){
+        // Action
+        var oldest = indexInTest.oldestUnsettledDate(List.of("Canada-Dollar", "Iraq-Dinar"));
+
+        // Assert
+        assertNull(oldest);
+    }
+
+    @Test
+    void testLoad_Replaces_Previous_Rates(){
+        // Action
+        indexInTest.load(List.of(rate("Mexico-Peso", "2023-06-30", "17.1")));
+
+        // Assert
+        assertEquals(1, indexInTest.size());
+        assertEquals(ExchangeRateIndex.NO_RATE, indexInTest.floorRate("Canada-Dollar", LocalDate.parse("2023-03-31")));
+    }
+
+    private static ExchangeRate rate(String countryCurrency, String recordDate, String exchangeRate){
+        return ExchangeRate.builder()
+                .countryCurrencyDesc(countryCurrency)
+                .recordDate(LocalDate.parse(recordDate))
+                .exchangeRate(new BigDecimal(exchangeRate))
+                .build();
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.wex;
+
+import com.example.wex.model.RateKey;
+import com.example.wex.service.ExchangeRateClient;
+import com.example.wex.service.ExchangeRateResilience;
+import com.example.wex.service.ExchangeRateUnavailableException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ExchangeRateResilienceTest {
+    private static final RateKey TEST_KEY = new RateKey("Mexico", "Peso", LocalDate.parse("2021-05-15"));
+
+    private FiscalDataStubServer stubServer;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stubServer = new FiscalDataStubServer();
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        stubServer.close();
+    }
+
+    private ExchangeRateClient client(ExchangeRateResilience resilience) {
+        return new ExchangeRateClient(WebClient.create(stubServer.url()), new ObjectMapper().findAndRegisterModules(),
+                resilience, meterRegistry, 6);
+    }
+
+    private ExchangeRateResilience resilience(Duration attemptTimeout, int maxRetries, int maxConcurrentCalls,
+                                              int minimumCalls) {
+        return new ExchangeRateResilience(attemptTimeout, Duration.ofSeconds(5), maxRetries, Duration.ofMillis(10),
+                0.5, maxConcurrentCalls, 50, minimumCalls, minimumCalls, Duration.ofSeconds(30));
+    }
+
+    @Test
+    void testFetchLatestRate_Success_Retries_Transient_Failures() throws IOException {
+        // Assign
+        stubServer.failNext(2, 503);
+        var clientInTest = client(resilience(Duration.ofSeconds(1), 2, 10, 10));
+
+        // Action
+        var rate = clientInTest.fetchLatestRate(TEST_KEY);
+
+        // Assert
+        assertEquals(new BigDecimal("20.518"), rate.exchangeRate());
+        assertEquals(3, stubServer.requestCount());
+        assertEquals(1, meterRegistry.get("fiscaldata.requests").tags("operation", "latestRate", "outcome", "SUCCESS")
+                .timer().count());
+        assertEquals(1, meterRegistry.get("fiscaldata.response.size").summary().count());
+    }
+
+    @Test
+    void testFetchLatestRate_Exception_Client_Error_Not_Retried() {
+        // Assign
+        stubServer.failNext(1, 400);
+        var clientInTest = client(resilience(Duration.ofSeconds(1), 2, 10, 10));
+
+        // Action
+        assertThrows(WebClientResponseException.BadRequest.class, () -> clientInTest.fetchLatestRate(TEST_KEY));
+
+        // Assert
+        assertEquals(1, stubServer.requestCount());
+    }
+
+    @Test
+    void testFetchLatestRate_Exception_Attempt_Timeout() {
+        // Assign
+        stubServer.latency(Duration.ofMillis(500));
+        var clientInTest = client(resilience(Duration.ofMillis(100), 0, 10, 10));
+
+        // Action
+        var exception = assertThrows(ExchangeRateUnavailableException.class, () -> clientInTest.fetchLatestRate(TEST_KEY));
+
+        // Assert
+        assertInstanceOf(TimeoutException.class, exception.getCause());
+        assertEquals(1, meterRegistry.get("fiscaldata.requests").tags("outcome", "ERROR", "exception", "TimeoutException")
+                .timer().count());
+    }
+
+    @Test
+    void testFetchLatestRate_Exception_Fails_Fast_When_Circuit_Open() {
+        // Assign
+        stubServer.failNext(100, 503);
+        var resilience = resilience(Duration.ofSeconds(1), 0, 10, 4);
+        var clientInTest = client(resilience);
+        for (int day = 1; day <= 4; day++) {
+            var key = new RateKey("Mexico", "Peso", LocalDate.of(2021, 5, day));
+            assertThrows(ExchangeRateUnavailableException.class, () -> clientInTest.fetchLatestRate(key));
+        }
+
+        // Action
+        var exception = assertThrows(ExchangeRateUnavailableException.class, () -> clientInTest.fetchLatestRate(TEST_KEY));
+
+        // Assert
+        assertEquals(CircuitBreaker.State.OPEN, resilience.circuitState());
+        assertInstanceOf(CallNotPermittedException.class, exception.getCause());
+        assertEquals(4, stubServer.requestCount());
+    }
+
+    @Test
+    void testFetchLatestRate_Exception_Bulkhead_Full() throws Exception {
+        // Assign
+        stubServer.latency(Duration.ofMillis(500));
+        var clientInTest = client(resilience(Duration.ofSeconds(2), 0, 1, 10));
+        var firstCall = clientInTest.latestRate(TEST_KEY).toFuture();
+        while (stubServer.requestCount() == 0) {
+            Thread.sleep(10);
+        }
+
+        // Action
+        var otherKey = new RateKey("Canada", "Dollar", LocalDate.parse("2021-05-15"));
+        var exception = assertThrows(ExchangeRateUnavailableException.class, () -> clientInTest.fetchLatestRate(otherKey));
+
+        // Assert
+        assertInstanceOf(BulkheadFullException.class, exception.getCause());
+        assertEquals(new BigDecimal("20.518"), firstCall.get(2, TimeUnit.SECONDS).exchangeRate());
+        assertEquals(1, stubServer.requestCount());
+    }
+}
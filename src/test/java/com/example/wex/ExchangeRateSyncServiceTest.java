@@ -0,0 +1,88 @@
+package com.example.wex;
+
+import com.example.wex.model.ExchangeRate;
+import com.example.wex.model.ExchangeRatePage;
+import com.example.wex.model.ExchangeRateRecord;
+import com.example.wex.repository.ExchangeRateRepository;
+import com.example.wex.service.ExchangeRateClient;
+import com.example.wex.service.ExchangeRateIndex;
+import com.example.wex.service.ExchangeRateSyncService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class ExchangeRateSyncServiceTest {
+    private static final LocalDate MARCH_31 = LocalDate.parse("2023-03-31");
+    private static final LocalDate JUNE_30 = LocalDate.parse("2023-06-30");
+
+    @Mock
+    private ExchangeRateRepository rateRepository;
+
+    @Mock
+    private ExchangeRateClient exchangeRateClient;
+
+    @Captor
+    private ArgumentCaptor<List<ExchangeRate>> ratesCaptor;
+
+    private ExchangeRateSyncService serviceInTest;
+
+    @BeforeEach
+    void setUp(){
+        serviceInTest = new ExchangeRateSyncService(rateRepository, new ExchangeRateIndex(6), exchangeRateClient);
+        ReflectionTestUtils.setField(serviceInTest, "pageSize", 1000);
+        ReflectionTestUtils.setField(serviceInTest, "startDate", "2001-01-01");
+        ReflectionTestUtils.setField(serviceInTest, "refetchWindow", Period.ofMonths(6));
+    }
+
+    @Test
+    void testSync_Stores_Rate_Published_Late_For_Synced_Record_Date() throws IOException {
+        // Assign
+        var windowStart = JUNE_30.minusMonths(6);
+        given(rateRepository.findLatestRecordDate()).willReturn(Optional.of(JUNE_30));
+        given(rateRepository.findByRecordDateAfter(windowStart)).willReturn(List.of(
+                rate("Canada-Dollar", MARCH_31, "1.354"),
+                rate("Canada-Dollar", JUNE_30, "1.326")));
+        // Mexico-Peso was published for March 31 after June 30 had been synced for Canada-Dollar
+        given(exchangeRateClient.fetchRatesRecordedAfter(windowStart, 1, 1000)).willReturn(new ExchangeRatePage(List.of(
+                new ExchangeRateRecord(MARCH_31, "Canada-Dollar", new BigDecimal("1.354")),
+                new ExchangeRateRecord(MARCH_31, "Mexico-Peso", new BigDecimal("18.113")),
+                new ExchangeRateRecord(JUNE_30, "Canada-Dollar", new BigDecimal("1.326"))), 1));
+
+        // Action
+        serviceInTest.sync();
+
+        // Assert
+        verify(rateRepository).saveAll(ratesCaptor.capture());
+        assertAll("Sync",
+                () -> assertEquals(1, ratesCaptor.getValue().size()),
+                () -> assertEquals("Mexico-Peso", ratesCaptor.getValue().get(0).getCountryCurrencyDesc()),
+                () -> assertEquals(MARCH_31, ratesCaptor.getValue().get(0).getRecordDate())
+        );
+    }
+
+    private static ExchangeRate rate(String countryCurrency, LocalDate recordDate, String exchangeRate){
+        return ExchangeRate.builder()
+                .countryCurrencyDesc(countryCurrency)
+                .recordDate(recordDate)
+                .exchangeRate(new BigDecimal(exchangeRate))
+                .build();
+    }
+}
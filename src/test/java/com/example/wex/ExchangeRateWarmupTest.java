@@ -0,0 +1,127 @@
+package com.example.wex;
+
+import com.example.wex.model.ExchangeRate;
+import com.example.wex.model.ExchangeRatePage;
+import com.example.wex.model.ExchangeRateRecord;
+import com.example.wex.model.Money;
+import com.example.wex.model.RateKey;
+import com.example.wex.repository.PurchaseRepository;
+import com.example.wex.service.ExchangeRateCache;
+import com.example.wex.service.ExchangeRateClient;
+import com.example.wex.service.ExchangeRateIndex;
+import com.example.wex.service.ExchangeRateWarmup;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class ExchangeRateWarmupTest {
+    private static final LocalDate TODAY = LocalDate.now();
+    private static final ExchangeRateRecord OLDER_RATE =
+            new ExchangeRateRecord(TODAY.minusMonths(7), "Canada-Dollar", new BigDecimal("1.355"));
+    private static final ExchangeRateRecord LATEST_RATE =
+            new ExchangeRateRecord(TODAY, "Canada-Dollar", new BigDecimal("1.372"));
+
+    @Mock
+    private ExchangeRateClient exchangeRateClient;
+
+    @Mock
+    private PurchaseRepository purchaseRepository;
+
+    @Mock
+    private ConfigurableApplicationContext applicationContext;
+
+    private ExchangeRateIndex rateIndex;
+    private ExchangeRateCache rateCache;
+    private SimpleMeterRegistry meterRegistry;
+    private ExchangeRateWarmup warmupInTest;
+
+    @BeforeEach
+    void setUp(){
+        rateIndex = new ExchangeRateIndex(6);
+        rateCache = new ExchangeRateCache(1000, Duration.ofHours(1), 6);
+        meterRegistry = new SimpleMeterRegistry();
+        warmupInTest = new ExchangeRateWarmup(rateIndex, rateCache, exchangeRateClient, purchaseRepository,
+                applicationContext, meterRegistry, List.of("Canada-Dollar", " "), 6, false);
+    }
+
+    @Test
+    void testWarmUp_Seeds_Cache_With_Floor_Rates_Of_Unindexed_Days() throws IOException {
+        // Assign
+        given(exchangeRateClient.fetchRatesBetween(eq("Canada-Dollar"), any(), eq(TODAY), anyInt()))
+                .willReturn(new ExchangeRatePage(List.of(OLDER_RATE, LATEST_RATE), 1));
+
+        // Action
+        warmupInTest.warmUp();
+
+        // Assert
+        verify(purchaseRepository).count();
+        assertAll("Warm-up",
+                () -> assertEquals(Money.toScaledRate(new BigDecimal("1.372")),
+                        rateCache.get(new RateKey("Canada", "Dollar", TODAY))),
+                () -> assertEquals(Money.toScaledRate(new BigDecimal("1.355")),
+                        rateCache.get(new RateKey("Canada", "Dollar", TODAY.minusMonths(3)))),
+                () -> assertEquals(1, meterRegistry.get("startup.warmup").timer().count())
+        );
+    }
+
+    @Test
+    void testWarmUp_Skips_Days_The_Index_Already_Has() throws IOException {
+        // Assign
+        rateIndex.load(List.of(rate(OLDER_RATE), rate(LATEST_RATE)));
+        given(exchangeRateClient.fetchRatesBetween(eq("Canada-Dollar"), any(), eq(TODAY), anyInt()))
+                .willReturn(new ExchangeRatePage(List.of(OLDER_RATE, LATEST_RATE), 1));
+
+        // Action
+        warmupInTest.warmUp();
+
+        // Assert
+        assertAll("Warm-up",
+                () -> assertNull(rateCache.get(new RateKey("Canada", "Dollar", TODAY))),
+                () -> assertEquals(0, rateCache.size())
+        );
+    }
+
+    @Test
+    void testWarmUp_Completes_Upstream_Unavailable() throws IOException {
+        // Assign
+        given(exchangeRateClient.fetchRatesBetween(eq("Canada-Dollar"), any(), eq(TODAY), anyInt()))
+                .willThrow(new IOException("connection refused"));
+
+        // Action
+        warmupInTest.warmUp();
+
+        // Assert
+        assertAll("Warm-up",
+                () -> assertEquals(0, rateCache.size()),
+                () -> assertEquals(1, meterRegistry.get("startup.warmup").timer().count())
+        );
+    }
+
+    private static ExchangeRate rate(ExchangeRateRecord rateRecord){
+        return ExchangeRate.builder()
+                .countryCurrencyDesc(rateRecord.countryCurrencyDesc())
+                .recordDate(rateRecord.recordDate())
+                .exchangeRate(rateRecord.exchangeRate())
+                .build();
+    }
+}
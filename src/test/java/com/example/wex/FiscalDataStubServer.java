@@ -0,0 +1,105 @@
+package com.example.wex;
+
+import com.example.wex.service.ExchangeRateResilience;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for the fiscaldata rates_of_exchange api. Answers every request with the configured body,
+ * after the configured latency, unless it has been told to fail the next few requests or it fails the request
+ * at the configured error rate. Failures drawn at the error rate come from a seeded generator, so a run with
+ * the same seed and request order fails the same requests.
+ */
+public class FiscalDataStubServer implements AutoCloseable {
+    static final String MEXICO_PESO_PAGE = """
+            {"data":[{"record_date":"2021-03-31","country_currency_desc":"Mexico-Peso","exchange_rate":"20.518"}],
+             "meta":{"total-pages":1}}""";
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger failuresRemaining = new AtomicInteger();
+    private volatile int failureStatus = 503;
+    private volatile Duration latency = Duration.ZERO;
+    private volatile String body = MEXICO_PESO_PAGE;
+    private volatile double errorRate;
+    private volatile Random errors = new Random(0);
+
+    public FiscalDataStubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    static ExchangeRateResilience defaultResilience() {
+        return new ExchangeRateResilience(Duration.ofSeconds(2), Duration.ofSeconds(6), 2, Duration.ofMillis(200),
+                0.5, 20, 50, 20, 10, Duration.ofSeconds(30));
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/rates_of_exchange";
+    }
+
+    public FiscalDataStubServer failNext(int requests, int status) {
+        failureStatus = status;
+        failuresRemaining.set(requests);
+        return this;
+    }
+
+    public FiscalDataStubServer latency(Duration latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * Fails each request with the configured failure status with probability {@code errorRate}.
+     */
+    public FiscalDataStubServer errorRate(double errorRate, long seed) {
+        this.errors = new Random(seed);
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    public FiscalDataStubServer respondWith(String body) {
+        this.body = body;
+        return this;
+    }
+
+    public int requestCount() {
+        return requestCount.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        try (exchange) {
+            Thread.sleep(latency.toMillis());
+            if (failuresRemaining.getAndUpdate(remaining -> Math.max(remaining - 1, 0)) > 0
+                    || (errorRate > 0 && errors.nextDouble() < errorRate)) {
+                exchange.sendResponseHeaders(failureStatus, -1);
+                return;
+            }
+            var bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            exchange.getResponseBody().write(bytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.wex;
+
+import com.example.wex.model.IdempotencyKey;
+import com.example.wex.repository.IdempotencyKeyRepository;
+import com.example.wex.service.IdempotencyKeyInProgressException;
+import com.example.wex.service.IdempotencyKeyStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// each store stands for a separate instance sharing the database; repository calls commit on their own
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class IdempotencyKeyRepositoryTest {
+    @Autowired
+    private IdempotencyKeyRepository repository;
+
+    @AfterEach
+    void tearDown(){
+        repository.deleteAll();
+    }
+
+    @Test
+    void testClaim_Exception_Key_Already_Stored(){
+        // Assign
+        var createdAt = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        repository.claim("retry-key", createdAt);
+        repository.complete("retry-key", createdAt, 41L);
+
+        // Action
+        // Assert
+        assertThrows(DataIntegrityViolationException.class, () -> repository.claim("retry-key", createdAt.plusSeconds(1)));
+        assertEquals(41L, repository.findById("retry-key").map(IdempotencyKey::getTrxId).orElseThrow());
+    }
+
+    @Test
+    void testResolve_Second_Instance_Replays_Without_Creating(){
+        // Assign
+        var firstInstance = store();
+        var secondInstance = store();
+        firstInstance.resolve("retry-key", () -> 41L);
+
+        // Action
+        var replayed = secondInstance.resolve("retry-key", () -> {
+            throw new AssertionError("purchase must not be created again");
+        });
+
+        // Assert
+        assertAll("IdempotencyKey",
+                () -> assertEquals(new IdempotencyKeyStore.Resolution(41, true), replayed),
+                () -> assertEquals(41L, repository.findById("retry-key").map(IdempotencyKey::getTrxId).orElseThrow())
+        );
+    }
+
+    @Test
+    void testResolve_Exception_Claimed_By_Other_Instance_Then_Replays_Once_Created(){
+        // Assign
+        var firstInstance = store();
+        var secondInstance = store();
+
+        // Action
+        var replayed = firstInstance.resolve("retry-key", () -> {
+            assertThrows(IdempotencyKeyInProgressException.class, () -> secondInstance.resolve("retry-key", () -> {
+                throw new AssertionError("purchase must not be created while another instance creates it");
+            }));
+            return 42L;
+        });
+        var retried = secondInstance.resolve("retry-key", () -> {
+            throw new AssertionError("purchase must not be created again");
+        });
+
+        // Assert
+        assertAll("IdempotencyKey",
+                () -> assertEquals(new IdempotencyKeyStore.Resolution(42, false), replayed),
+                () -> assertEquals(new IdempotencyKeyStore.Resolution(42, true), retried)
+        );
+    }
+
+    @Test
+    void testResolve_Takes_Over_Abandoned_Claim(){
+        // Assign
+        repository.claim("retry-key", LocalDateTime.now().minusMinutes(5).truncatedTo(ChronoUnit.MICROS));
+
+        // Action
+        var resolution = store().resolve("retry-key", () -> 43L);
+
+        // Assert
+        assertAll("IdempotencyKey",
+                () -> assertEquals(new IdempotencyKeyStore.Resolution(43, false), resolution),
+                () -> assertEquals(43L, repository.findById("retry-key").map(IdempotencyKey::getTrxId).orElseThrow())
+        );
+    }
+
+    private IdempotencyKeyStore store() {
+        return new IdempotencyKeyStore(repository, 100, Duration.ofHours(1), true, Duration.ofSeconds(30));
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.wex;
+
+import com.example.wex.model.IdempotencyKey;
+import com.example.wex.repository.IdempotencyKeyRepository;
+import com.example.wex.service.IdempotencyKeyInProgressException;
+import com.example.wex.service.IdempotencyKeyStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class IdempotencyKeyStoreTest {
+    @Mock
+    private IdempotencyKeyRepository repository;
+
+    @Test
+    void testResolve_Concurrent_Duplicates_Create_Once() throws Exception {
+        // Assign
+        var storeInTest = new IdempotencyKeyStore(null, 100, Duration.ofHours(1), false, Duration.ofSeconds(30));
+        var creations = new AtomicLong();
+        var start = new CountDownLatch(1);
+        Callable<IdempotencyKeyStore.Resolution> post = () -> {
+            start.await();
+            return storeInTest.resolve("retry-key", () -> {
+                sleep(20);
+                return 1000 + creations.incrementAndGet();
+            });
+        };
+
+        // Action
+        var resolutions = new ArrayList<IdempotencyKeyStore.Resolution>();
+        try (var executor = Executors.newFixedThreadPool(8)) {
+            var futures = new ArrayList<Future<IdempotencyKeyStore.Resolution>>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(post));
+            }
+            start.countDown();
+            for (var future : futures) {
+                resolutions.add(future.get());
+            }
+        }
+
+        // Assert
+        assertAll("IdempotencyKeyStore",
+                () -> assertEquals(1, creations.get()),
+                () -> assertTrue(resolutions.stream().allMatch(resolution -> resolution.trxId() == 1001)),
+                () -> assertEquals(7, resolutions.stream().filter(IdempotencyKeyStore.Resolution::replayed).count())
+        );
+    }
+
+    @Test
+    void testResolve_Failed_Create_Releases_Key(){
+        // Assign
+        var storeInTest = new IdempotencyKeyStore(null, 100, Duration.ofHours(1), false, Duration.ofSeconds(30));
+
+        // Action
+        assertThrows(NumberFormatException.class, () -> storeInTest.resolve("retry-key", () -> {
+            throw new NumberFormatException("Invalid purchase amount");
+        }));
+        var retried = storeInTest.resolve("retry-key", () -> 7L);
+
+        // Assert
+        assertEquals(new IdempotencyKeyStore.Resolution(7, false), retried);
+    }
+
+    @Test
+    void testResolve_Persistent_Replays_Key_Stored_Before_Restart(){
+        // Assign
+        var storeInTest = new IdempotencyKeyStore(repository, 100, Duration.ofHours(1), true, Duration.ofSeconds(30));
+        given(repository.claim(eq("retry-key"), any(LocalDateTime.class)))
+                .willThrow(new DataIntegrityViolationException("duplicate key"));
+        given(repository.findById("retry-key"))
+                .willReturn(Optional.of(new IdempotencyKey("retry-key", 42L, LocalDateTime.now().minusMinutes(5))));
+
+        // Action
+        var resolution = storeInTest.resolve("retry-key", () -> {
+            throw new AssertionError("purchase must not be created again");
+        });
+
+        // Assert
+        assertEquals(new IdempotencyKeyStore.Resolution(42, true), resolution);
+    }
+
+    @Test
+    void testResolve_Persistent_Claims_Key_Before_Creating(){
+        // Assign
+        var storeInTest = new IdempotencyKeyStore(repository, 100, Duration.ofHours(1), true, Duration.ofSeconds(30));
+        given(repository.complete(eq("new-key"), any(LocalDateTime.class), eq(43L))).willReturn(1);
+
+        // Action
+        var resolution = storeInTest.resolve("new-key", () -> {
+            verify(repository).claim(eq("new-key"), any(LocalDateTime.class));
+            return 43L;
+        });
+
+        // Assert
+        verify(repository).complete(eq("new-key"), any(LocalDateTime.class), eq(43L));
+        assertEquals(new IdempotencyKeyStore.Resolution(43, false), resolution);
+    }
+
+    @Test
+    void testResolve_Persistent_Exception_Key_Claimed_Elsewhere_In_Progress(){
+        // Assign
+        var storeInTest = new IdempotencyKeyStore(repository, 100, Duration.ofHours(1), true, Duration.ofSeconds(30));
+        given(repository.claim(eq("busy-key"), any(LocalDateTime.class)))
+                .willThrow(new DataIntegrityViolationException("duplicate key"));
+        given(repository.findById("busy-key"))
+                .willReturn(Optional.of(new IdempotencyKey("busy-key", null, LocalDateTime.now().minusSeconds(1))));
+
+        // Action
+        // Assert
+        assertThrows(IdempotencyKeyInProgressException.class, () -> storeInTest.resolve("busy-key", () -> {
+            throw new AssertionError("purchase must not be created while another instance creates it");
+        }));
+    }
+
+    @Test
+    void testResolve_Persistent_Failed_Create_Deletes_Claim(){
+        // Assign
+        var storeInTest = new IdempotencyKeyStore(repository, 100, Duration.ofHours(1), true, Duration.ofSeconds(30));
+
+        // Action
+        assertThrows(NumberFormatException.class, () -> storeInTest.resolve("retry-key", () -> {
+            throw new NumberFormatException("Invalid purchase amount");
+        }));
+
+        // Assert
+        verify(repository).deleteClaim(eq("retry-key"), any(LocalDateTime.class));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.wex;
+
+import com.example.wex.model.Money;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MoneyTest {
+
+    @ParameterizedTest
+    @CsvSource({"54356,20.518,11152.76", "54356,0.851,462.57", "2000,20.518,410.36", "1,0.5,0.01", "1,0.499999,0.00",
+            "-1,0.5,-0.01", "0,1.355,0.00"})
+    void testConvert_Rounds_Half_Up_To_Cents(long cents, String rate, String expectedAmount){
+        // Action
+        var converted = Money.convert(cents, Money.toScaledRate(new BigDecimal(rate)));
+
+        // Assert
+        assertEquals(new BigDecimal(expectedAmount), Money.toAmount(converted));
+    }
+
+    @Test
+    void testConvert_Matches_BigDecimal_When_Product_Overflows_Long(){
+        // Assign
+        long cents = 900_000_000_000_000L;
+        long scaledRate = Money.toScaledRate(new BigDecimal("15.123456"));
+        var expected = Money.toAmount(cents).multiply(new BigDecimal("15.123456")).setScale(2, RoundingMode.HALF_UP);
+
+        // Action
+        var converted = Money.convert(cents, scaledRate);
+
+        // Assert
+        assertEquals(expected, Money.toAmount(converted));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"553.23,55323", "543.456,54346", "543.454,54345", "10,1000", "10.5,1050", ".5,50", "5.,500",
+            "-1.005,-101", "+2.50,250", "1e2,10000", "12345678901234567.891,1234567890123456789"})
+    void testParseCents_Matches_BigDecimal_Half_Up(String amount, long expectedCents){
+        // Action
+        var cents = Money.parseCents(amount);
+
+        // Assert
+        assertEquals(expectedCents, cents);
+        assertEquals(new BigDecimal(amount).setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact(), cents);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"$54.67", "467.45 dollars", "", "-", ".", "1.2.3"})
+    void testParseCents_Exception_Malformed_Amount(String amount){
+        // Action & Assert
+        assertThrows(NumberFormatException.class, () -> Money.parseCents(amount));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"20518000,20.518", "1000000,1", "100000000,100", "1,0.000001"})
+    void testToRate_Strips_Padding_Zeros(long scaledRate, String expectedRate){
+        // Action & Assert
+        assertEquals(expectedRate, Money.toRate(scaledRate).toPlainString());
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.wex;
+
+import com.example.wex.model.AggregateGranularity;
+import com.example.wex.model.PurchaseDailyRollup;
+import com.example.wex.model.RateQuote;
+import com.example.wex.repository.PurchaseDailyRollupRepository;
+import com.example.wex.service.PurchaseAggregateService;
+import com.example.wex.service.PurchaseService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@ExtendWith(MockitoExtension.class)
+public class PurchaseAggregateServiceTest {
+    private static final LocalDate FROM = LocalDate.parse("2023-03-01");
+    private static final LocalDate TO = LocalDate.parse("2023-04-30");
+
+    @Mock
+    private PurchaseDailyRollupRepository rollupRepository;
+
+    @Mock
+    private PurchaseService purchaseService;
+
+    @InjectMocks
+    private PurchaseAggregateService serviceInTest;
+
+    @Test
+    void testGetAggregates_Month_Sums_Daily_Rollups_Without_Conversion() throws IOException {
+        // Assign
+        given(rollupRepository.findByRollupDateBetweenOrderByRollupDate(FROM, TO)).willReturn(List.of(
+                new PurchaseDailyRollup(LocalDate.parse("2023-03-30"), 2, 1_500L, 500L, 1_000L),
+                new PurchaseDailyRollup(LocalDate.parse("2023-03-31"), 1, 200L, 200L, 200L),
+                new PurchaseDailyRollup(LocalDate.parse("2023-04-01"), 1, 54_346L, 54_346L, 54_346L)));
+
+        // Action
+        var response = serviceInTest.getAggregates(FROM, TO, AggregateGranularity.MONTH, null, null);
+
+        // Assert
+        verifyNoInteractions(purchaseService);
+        var march = response.getAggregates().get(0);
+        assertAll("PurchaseAggregateResponse",
+                () -> assertEquals(2, response.getAggregates().size()),
+                () -> assertEquals(LocalDate.parse("2023-03-01"), march.getPeriodStart()),
+                () -> assertEquals(3, march.getPurchaseCount()),
+                () -> assertEquals(new BigDecimal("17.00"), march.getTotalAmt()),
+                () -> assertEquals(new BigDecimal("2.00"), march.getMinAmt()),
+                () -> assertEquals(new BigDecimal("10.00"), march.getMaxAmt()),
+                () -> assertNull(march.getConvertedTotalAmt()),
+                () -> assertEquals(new BigDecimal("543.46"), response.getAggregates().get(1).getTotalAmt())
+        );
+    }
+
+    @Test
+    void testGetAggregates_Day_Converts_Each_Day_At_Its_Rate() throws IOException {
+        // Assign
+        var withRate = LocalDate.parse("2023-03-31");
+        var withoutRate = LocalDate.parse("2023-04-01");
+        given(rollupRepository.findByRollupDateBetweenOrderByRollupDate(FROM, TO)).willReturn(List.of(
+                new PurchaseDailyRollup(withRate, 2, 1_500L, 500L, 1_000L),
+                new PurchaseDailyRollup(withoutRate, 1, 200L, 200L, 200L)));
+        given(purchaseService.getExchangeRate(anyString(), anyString(), any(LocalDate.class)))
+                .willAnswer(invocation -> withRate.equals(invocation.getArgument(2)) ? RateQuote.fresh(1_355_000L) : null);
+
+        // Action
+        var response = serviceInTest.getAggregates(FROM, TO, AggregateGranularity.DAY, "Dollar", "Canada");
+
+        // Assert
+        var converted = response.getAggregates().get(0);
+        assertAll("PurchaseAggregateResponse",
+                () -> assertEquals(new BigDecimal("20.33"), converted.getConvertedTotalAmt()),
+                () -> assertEquals(new BigDecimal("6.78"), converted.getConvertedMinAmt()),
+                () -> assertEquals(new BigDecimal("13.55"), converted.getConvertedMaxAmt()),
+                () -> assertNull(response.getAggregates().get(1).getConvertedTotalAmt()),
+                () -> assertEquals(List.of(withoutRate), response.getMissingRateDays())
+        );
+    }
+}
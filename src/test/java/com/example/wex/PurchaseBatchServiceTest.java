@@ -0,0 +1,156 @@
+package com.example.wex;
+
+import com.example.wex.model.PurchaseRequest;
+import com.example.wex.model.PurchaseTrx;
+import com.example.wex.repository.PurchaseRepository;
+import com.example.wex.service.PurchaseBatchService;
+import com.example.wex.service.PurchaseRollupService;
+import com.example.wex.service.PurchaseService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class PurchaseBatchServiceTest {
+    @Mock
+    private PurchaseRepository purchaseRepository;
+
+    @Mock
+    private PurchaseRollupService rollupService;
+
+    @Spy
+    private PurchaseService purchaseService = new PurchaseService(null, null, null, null, null, null, null, null, null);
+
+    @Spy
+    private Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @InjectMocks
+    private PurchaseBatchService serviceInTest;
+
+    private final AtomicLong nextTrxId = new AtomicLong(1);
+
+    @BeforeEach
+    void setUp(){
+        ReflectionTestUtils.setField(serviceInTest, "chunkSize", 2);
+    }
+
+    @Test
+    void testSavePurchases_Success_Saves_In_Chunks_And_Reports_Ids(){
+        // Assign
+        givenRepositoryAssignsIds();
+        var requests = List.of(request("543.456", "2023-03-31T10:00"), request("10", "2023-04-01T10:00"),
+                request("20.5", "2023-04-02T10:00"));
+
+        // Action
+        var response = serviceInTest.createPurchases(requests);
+
+        // Assert
+        verify(purchaseRepository, times(2)).saveAllAndFlush(anyList());
+        verify(rollupService, times(2)).record(anyList());
+        assertAll("BatchPurchaseResponse",
+                () -> assertEquals(3, response.getCreated()),
+                () -> assertEquals(0, response.getFailed()),
+                () -> assertEquals(List.of(1L, 2L, 3L),
+                        response.getItems().stream().map(item -> item.getTransactionId()).toList())
+        );
+    }
+
+    @Test
+    void testSavePurchases_Reports_Invalid_Items_And_Saves_The_Rest(){
+        // Assign
+        givenRepositoryAssignsIds();
+        var longDescription = request("10", "2023-04-01T10:00");
+        longDescription.setDescription("x".repeat(51));
+        var requests = List.of(request("$54.67", "2023-03-31T10:00"), request("10", "2021-03-31 09:00"),
+                longDescription, request("10", "2023-04-01T10:00"));
+
+        // Action
+        var response = serviceInTest.createPurchases(requests);
+
+        // Assert
+        assertAll("BatchPurchaseResponse",
+                () -> assertEquals(1, response.getCreated()),
+                () -> assertEquals(3, response.getFailed()),
+                () -> assertNotNull(response.getItems().get(0).getError()),
+                () -> assertNotNull(response.getItems().get(1).getError()),
+                () -> assertNotNull(response.getItems().get(2).getError()),
+                () -> assertEquals(1L, response.getItems().get(3).getTransactionId()),
+                () -> assertNull(response.getItems().get(3).getError())
+        );
+    }
+
+    @Test
+    void testSavePurchases_Reports_Failed_Chunk(){
+        // Assign
+        given(purchaseRepository.saveAllAndFlush(anyList())).willThrow(new DataIntegrityViolationException("boom"));
+
+        // Action
+        var response = serviceInTest.createPurchases(List.of(request("10", "2023-04-01T10:00")));
+
+        // Assert
+        assertEquals(0, response.getCreated());
+        assertEquals("Failed to save purchase: boom", response.getItems().get(0).getError());
+        verify(rollupService, never()).record(anyList());
+    }
+
+    @Test
+    void testSavePurchasesNdjson_Success_Reads_Each_Line() throws IOException {
+        // Assign
+        givenRepositoryAssignsIds();
+        var ndjson = """
+                {"description":"first","trxDate":"2023-03-31T10:00","amount":"10"}
+                {"description":"second","trxDate":"2023-03-31T11:00","amount":"20"}
+                """;
+
+        // Action
+        var response = serviceInTest.createPurchases(new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)));
+
+        // Assert
+        assertEquals(2, response.getCreated());
+    }
+
+    private void givenRepositoryAssignsIds(){
+        given(purchaseRepository.saveAllAndFlush(anyList())).willAnswer(invocation -> {
+            List<PurchaseTrx> chunk = new ArrayList<>(invocation.getArgument(0));
+            chunk.forEach(purchaseTrx -> purchaseTrx.setTrxId(nextTrxId.getAndIncrement()));
+            return chunk;
+        });
+    }
+
+    private static PurchaseRequest request(String amount, String trxDate){
+        var request = new PurchaseRequest();
+        request.setAmount(amount);
+        request.setDescription("test purchase");
+        request.setTrxDate(trxDate);
+        return request;
+    }
+}
@@ -1,10 +1,25 @@
 package com.example.wex;
 
 import com.example.wex.controller.PurchaseController;
+import com.example.wex.model.AggregateGranularity;
+import com.example.wex.model.BatchPurchaseResponse;
+import com.example.wex.model.BulkConversionResponse;
+import com.example.wex.model.MultiCurrencyResponse;
+import com.example.wex.model.PurchaseAggregateResponse;
+import com.example.wex.model.PurchaseFilter;
+import com.example.wex.model.PurchasePage;
 import com.example.wex.model.PurchaseRequest;
 import com.example.wex.model.PurchaseResponse;
 import com.example.wex.model.PurchaseTrx;
+import com.example.wex.service.IdempotencyKeyStore;
+import com.example.wex.service.PurchaseAggregateService;
+import com.example.wex.service.PurchaseBatchService;
+import com.example.wex.service.PurchaseIngestService;
+import com.example.wex.service.PurchaseListingService;
+import com.example.wex.service.PurchaseRollupService;
 import com.example.wex.service.PurchaseService;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
@@ -12,29 +27,64 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeParseException;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 
 @ExtendWith(MockitoExtension.class)
 public class PurchaseControllerTest {
     @Mock
     private PurchaseService purchaseService;
 
+    @Mock
+    private PurchaseBatchService purchaseBatchService;
+
+    @Mock
+    private PurchaseIngestService purchaseIngestService;
+
+    @Mock
+    private PurchaseListingService purchaseListingService;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @Mock
+    private PurchaseAggregateService purchaseAggregateService;
+
+    @Mock
+    private PurchaseRollupService purchaseRollupService;
+
+    @Spy
+    private IdempotencyKeyStore idempotencyKeyStore = new IdempotencyKeyStore(null, 100, Duration.ofHours(1), false, Duration.ofSeconds(30));
+
     @InjectMocks
     private PurchaseController controllerInTest;
 
@@ -44,7 +94,7 @@ public class PurchaseControllerTest {
     static void init(){
         testTransaction = new PurchaseTrx(99,"this is a test purchase",
                 LocalDateTime.parse("2021-03-31T09:00"),
-                BigDecimal.valueOf(543.56));
+                54356L);
     }
 
     @Nested
@@ -62,7 +112,7 @@ public class PurchaseControllerTest {
             given(purchaseService.createPurchase(any(PurchaseRequest.class))).willReturn(testTransaction);
 
             // Action
-            var response = controllerInTest.postPurchase(testRequest);
+            var response = controllerInTest.postPurchase(null, testRequest);
 
             // Assert
             verify(purchaseService).createPurchase(testRequest);
@@ -78,7 +128,7 @@ public class PurchaseControllerTest {
                     .willThrow(DateTimeParseException.class);
 
             // Action
-            var response = controllerInTest.postPurchase(testRequest);
+            var response = controllerInTest.postPurchase(null, testRequest);
 
             // Assert
             verify(purchaseService).createPurchase(testRequest);
@@ -92,12 +142,72 @@ public class PurchaseControllerTest {
                     .willThrow(new NumberFormatException("Invalid purchase amount"));
 
             // Action
-            var response = controllerInTest.postPurchase(testRequest);
+            var response = controllerInTest.postPurchase(null, testRequest);
 
             // Assert
             verify(purchaseService).createPurchase(testRequest);
             assertTrue(HttpStatus.BAD_REQUEST.isSameCodeAs(response.getStatusCode()));
         }
+
+        @Test
+        void testSavePurchase_200_Replayed_Key_Returns_Original_TransactionId(){
+            // Assign
+            given(purchaseService.createPurchase(any(PurchaseRequest.class))).willReturn(testTransaction);
+
+            // Action
+            var first = controllerInTest.postPurchase("retry-key", testRequest);
+            var replay = controllerInTest.postPurchase("retry-key", testRequest);
+
+            // Assert
+            verify(purchaseService).createPurchase(testRequest);
+            assertEquals(Map.of("transactionId",99L),first.getBody());
+            assertEquals(Map.of("transactionId",99L),replay.getBody());
+            assertEquals("false", first.getHeaders().getFirst("Idempotent-Replayed"));
+            assertEquals("true", replay.getHeaders().getFirst("Idempotent-Replayed"));
+            assertTrue(HttpStatus.OK.isSameCodeAs(replay.getStatusCode()));
+        }
+
+        @Test
+        void testSavePurchase_400_Oversized_Idempotency_Key(){
+            // Action
+            var response = controllerInTest.postPurchase("k".repeat(IdempotencyKeyStore.MAX_KEY_LENGTH + 1), testRequest);
+
+            // Assert
+            verifyNoInteractions(purchaseService);
+            assertTrue(HttpStatus.BAD_REQUEST.isSameCodeAs(response.getStatusCode()));
+        }
+    }
+
+    @Nested
+    class TestPostPurchases{
+
+        @Test
+        void testSavePurchases_200_Returns_Batch_Outcome(){
+            // Assign
+            var requests = List.of(new PurchaseRequest(), new PurchaseRequest());
+            var testResponse = BatchPurchaseResponse.builder().created(2).build();
+            given(purchaseBatchService.createPurchases(requests)).willReturn(testResponse);
+
+            // Action
+            var response = controllerInTest.postPurchases(requests);
+
+            // Assert
+            assertEquals(testResponse,response.getBody());
+            assertTrue(HttpStatus.OK.isSameCodeAs(response.getStatusCode()));
+        }
+
+        @Test
+        void testSavePurchasesNdjson_400_Malformed_Body() throws IOException {
+            // Assign
+            var body = new ByteArrayInputStream("{\"amount\":".getBytes(StandardCharsets.UTF_8));
+            given(purchaseBatchService.createPurchases(body)).willThrow(JsonParseException.class);
+
+            // Action
+            var response = controllerInTest.postPurchasesNdjson(body);
+
+            // Assert
+            assertTrue(HttpStatus.BAD_REQUEST.isSameCodeAs(response.getStatusCode()));
+        }
     }
 
     @Nested
@@ -165,6 +275,19 @@ public class PurchaseControllerTest {
             assertTrue(HttpStatus.SERVICE_UNAVAILABLE.isSameCodeAs(response.getStatusCode()));
         }
 
+        @Test
+        void testGetPurchase_400_ExchangeRate_Request_Rejected() throws IOException {
+            // Assign
+            given(purchaseService.getPurchase(anyLong(),anyString(),anyString()))
+                    .willThrow(new WebClientResponseException(400, "Bad Request", null, null, null));
+
+            // Action
+            var response = controllerInTest.getPurchase(testTrxId,testCurrency,testCountry);
+
+            // Assert
+            assertTrue(HttpStatus.BAD_REQUEST.isSameCodeAs(response.getStatusCode()));
+        }
+
         @Test
         void testGetPurchase_500_ExchangeRate_Missing() throws IOException {
             // Assign
@@ -178,4 +301,241 @@ public class PurchaseControllerTest {
             assertTrue(HttpStatus.INTERNAL_SERVER_ERROR.isSameCodeAs(response.getStatusCode()));
         }
     }
+
+    @Nested
+    class TestGetPurchases{
+
+        @Test
+        void testGetPurchases_200_Returns_Conversions_By_Id() throws IOException {
+            // Assign
+            var testResponse = BulkConversionResponse.builder().build();
+            given(purchaseService.getPurchases(anyList(),anyString(),anyString())).willReturn(testResponse);
+
+            // Action
+            var response = controllerInTest.getPurchases(List.of(1L, 2L), null, null, null, null, 100, "Peso", "Mexico");
+
+            // Assert
+            verify(purchaseService).getPurchases(List.of(1L, 2L), "Peso", "Mexico");
+            assertEquals(testResponse,response.getBody());
+            assertTrue(HttpStatus.OK.isSameCodeAs(response.getStatusCode()));
+        }
+
+        @Test
+        void testGetPurchases_400_Too_Many_Ids() throws IOException {
+            // Assign
+            given(purchaseService.getPurchases(anyList(),anyString(),anyString())).willThrow(IllegalArgumentException.class);
+
+            // Action
+            var response = controllerInTest.getPurchases(List.of(1L, 2L), null, null, null, null, 100, "Peso", "Mexico");
+
+            // Assert
+            assertTrue(HttpStatus.BAD_REQUEST.isSameCodeAs(response.getStatusCode()));
+        }
+
+        @Test
+        void testGetPurchases_200_Returns_Conversions_By_Date_Range() throws IOException {
+            // Assign
+            var from = LocalDateTime.parse("2021-01-01T00:00");
+            var to = LocalDateTime.parse("2021-12-31T23:59");
+            given(purchaseService.getPurchases(from, to, null, null, 100, "Peso", "Mexico")).willReturn(BulkConversionResponse.builder().build());
+
+            // Action
+            var response = controllerInTest.getPurchases(null, from, to, null, null, 100, "Peso", "Mexico");
+
+            // Assert
+            assertTrue(HttpStatus.OK.isSameCodeAs(response.getStatusCode()));
+        }
+
+        @Test
+        void testGetPurchases_400_No_Ids_Or_Date_Range() {
+            // Action
+            var response = controllerInTest.getPurchases(List.of(), LocalDateTime.parse("2021-01-01T00:00"), null, null, null, 100, "Peso", "Mexico");
+
+            // Assert
+            assertTrue(HttpStatus.BAD_REQUEST.isSameCodeAs(response.getStatusCode()));
+        }
+    }
+
+    @Nested
+    class TestListPurchases{
+
+        @Test
+        void testListPurchases_200_Returns_Page() {
+            // Assign
+            var testPage = PurchasePage.builder().purchases(List.of(testTransaction)).build();
+            given(purchaseListingService.listPurchases(any(PurchaseFilter.class), any(), any(), anyInt())).willReturn(testPage);
+
+            // Action
+            var response = controllerInTest.listPurchases(null, null, BigDecimal.ONE, null, null, null, 100);
+
+            // Assert
+            verify(purchaseListingService).listPurchases(
+                    new PurchaseFilter(null, null, BigDecimal.ONE, null), null, null, 100);
+            assertEquals(testPage,response.getBody());
+            assertTrue(HttpStatus.OK.isSameCodeAs(response.getStatusCode()));
+        }
+
+        @Test
+        @SuppressWarnings("unchecked")
+        void testStreamPurchases_200_Writes_Ndjson() throws IOException {
+            // Assign
+            willAnswer(invocation -> {
+                Consumer<PurchaseTrx> consumer = invocation.getArgument(1);
+                consumer.accept(testTransaction);
+                consumer.accept(testTransaction);
+                return null;
+            }).given(purchaseListingService).streamPurchases(any(PurchaseFilter.class), any(Consumer.class));
+            var output = new ByteArrayOutputStream();
+
+            // Action
+            var response = controllerInTest.streamPurchases(null, null, null, null);
+            response.getBody().writeTo(output);
+
+            // Assert
+            var lines = output.toString(StandardCharsets.UTF_8).split("\n");
+            assertEquals(2, lines.length);
+            assertTrue(lines[0].contains("\"trxId\":99"));
+        }
+    }
+
+    @Nested
+    class TestGetPurchaseMultiCurrency{
+
+        @Test
+        void testGetPurchase_200_Returns_Conversions_Per_Target() {
+            // Assign
+            var targets = List.of("Mexico-Peso", "Canada-Dollar");
+            var testResponse = MultiCurrencyResponse.builder().build();
+            given(purchaseService.getPurchase(99L, targets)).willReturn(Mono.just(testResponse));
+
+            // Action
+            var response = controllerInTest.getPurchase(99L, targets).block();
+
+            // Assert
+            assertEquals(testResponse,response.getBody());
+            assertTrue(HttpStatus.OK.isSameCodeAs(response.getStatusCode()));
+        }
+
+        @Test
+        void testGetPurchase_400_Malformed_Target() {
+            // Assign
+            given(purchaseService.getPurchase(99L, List.of("Peso"))).willThrow(IllegalArgumentException.class);
+
+            // Action
+            var response = controllerInTest.getPurchase(99L, List.of("Peso")).block();
+
+            // Assert
+            assertTrue(HttpStatus.BAD_REQUEST.isSameCodeAs(response.getStatusCode()));
+        }
+    }
+
+    @Nested
+    class TestGetPurchaseAsync{
+        long testTrxId;
+        String testCountry;
+        String testCurrency;
+
+        @BeforeEach
+        void setUp(){
+            testCountry = "Mexico";
+            testCurrency = "Peso";
+        }
+
+        @Test
+        void testGetPurchaseAsync_200_Returns_PurchaseDetails() {
+            // Assign
+            var testResponse = PurchaseResponse.builder().build();
+            given(purchaseService.getPurchaseAsync(anyLong(),anyString(),anyString())).willReturn(Mono.just(testResponse));
+
+            // Action
+            var response = controllerInTest.getPurchaseAsync(testTrxId,testCurrency,testCountry).block();
+
+            // Assert
+            verify(purchaseService).getPurchaseAsync(testTrxId,testCurrency,testCountry);
+            assertEquals(testResponse,response.getBody());
+            assertTrue(HttpStatus.OK.isSameCodeAs(response.getStatusCode()));
+        }
+
+        @Test
+        void testGetPurchaseAsync_204_No_Transaction_Exists() {
+            // Assign
+            given(purchaseService.getPurchaseAsync(anyLong(),anyString(),anyString()))
+                    .willReturn(Mono.error(new NoSuchElementException()));
+
+            // Action
+            var response = controllerInTest.getPurchaseAsync(testTrxId,testCurrency,testCountry).block();
+
+            // Assert
+            assertTrue(HttpStatus.NO_CONTENT.isSameCodeAs(response.getStatusCode()));
+        }
+
+        @Test
+        void testGetPurchaseAsync_503_ExchangeRate_Call_Failure() {
+            // Assign
+            given(purchaseService.getPurchaseAsync(anyLong(),anyString(),anyString()))
+                    .willReturn(Mono.error(new IOException()));
+
+            // Action
+            var response = controllerInTest.getPurchaseAsync(testTrxId,testCurrency,testCountry).block();
+
+            // Assert
+            assertTrue(HttpStatus.SERVICE_UNAVAILABLE.isSameCodeAs(response.getStatusCode()));
+        }
+
+        @Test
+        void testGetPurchaseAsync_500_ExchangeRate_Missing() {
+            // Assign
+            given(purchaseService.getPurchaseAsync(anyLong(),anyString(),anyString())).willReturn(Mono.empty());
+
+            // Action
+            var response = controllerInTest.getPurchaseAsync(testTrxId,testCurrency,testCountry).block();
+
+            // Assert
+            assertTrue(HttpStatus.INTERNAL_SERVER_ERROR.isSameCodeAs(response.getStatusCode()));
+        }
+    }
+
+    @Nested
+    class TestGetAggregates{
+        LocalDate testFrom = LocalDate.parse("2023-01-01");
+        LocalDate testTo = LocalDate.parse("2023-03-31");
+
+        @Test
+        void testGetAggregates_200_Returns_Aggregates() throws IOException {
+            // Assign
+            var testResponse = PurchaseAggregateResponse.builder().aggregates(List.of()).missingRateDays(List.of()).build();
+            given(purchaseAggregateService.getAggregates(testFrom, testTo, AggregateGranularity.MONTH, "Peso", "Mexico"))
+                    .willReturn(testResponse);
+
+            // Action
+            var response = controllerInTest.getAggregates(testFrom, testTo, AggregateGranularity.MONTH, "Peso", "Mexico");
+
+            // Assert
+            assertEquals(testResponse, response.getBody());
+            assertTrue(HttpStatus.OK.isSameCodeAs(response.getStatusCode()));
+        }
+
+        @Test
+        void testGetAggregates_400_Currency_Without_Country(){
+            // Action
+            var response = controllerInTest.getAggregates(testFrom, testTo, AggregateGranularity.DAY, "Peso", null);
+
+            // Assert
+            verifyNoInteractions(purchaseAggregateService);
+            assertTrue(HttpStatus.BAD_REQUEST.isSameCodeAs(response.getStatusCode()));
+        }
+
+        @Test
+        void testGetAggregates_503_ExchangeRate_Call_Failure() throws IOException {
+            // Assign
+            given(purchaseAggregateService.getAggregates(testFrom, testTo, AggregateGranularity.DAY, "Peso", "Mexico"))
+                    .willThrow(IOException.class);
+
+            // Action
+            var response = controllerInTest.getAggregates(testFrom, testTo, AggregateGranularity.DAY, "Peso", "Mexico");
+
+            // Assert
+            assertTrue(HttpStatus.SERVICE_UNAVAILABLE.isSameCodeAs(response.getStatusCode()));
+        }
+    }
 }
@@ -0,0 +1,178 @@
+package com.example.wex;
+
+import com.example.wex.model.ExchangeRate;
+import com.example.wex.model.PurchaseConversion;
+import com.example.wex.model.PurchaseTrx;
+import com.example.wex.repository.PurchaseConversionRepository;
+import com.example.wex.repository.PurchaseRepository;
+import com.example.wex.service.ExchangeRateIndex;
+import com.example.wex.service.PurchaseConversionService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class PurchaseConversionServiceTest {
+    private static final List<String> HOT_CURRENCIES = List.of("Mexico-Peso", "Euro Zone-Euro", "Canada-Dollar");
+
+    @Mock
+    private PurchaseConversionRepository conversionRepository;
+
+    @Mock
+    private PurchaseRepository purchaseRepository;
+
+    @Captor
+    private ArgumentCaptor<List<PurchaseConversion>> conversionsCaptor;
+
+    private PurchaseConversionService serviceInTest;
+
+    @BeforeEach
+    void setUp(){
+        var rateIndex = new ExchangeRateIndex(6);
+        rateIndex.load(List.of(
+                rate("Mexico-Peso", "2021-03-31", "20.518"),
+                rate("Mexico-Peso", "2021-06-30", "19.899"),
+                rate("Euro Zone-Euro", "2021-03-31", "0.851"),
+                rate("Euro Zone-Euro", "2021-06-30", "0.843"),
+                rate("Canada-Dollar", "2021-03-31", "1.257")));
+        serviceInTest = new PurchaseConversionService(conversionRepository, purchaseRepository, rateIndex,
+                new TaskExecutorAdapter(Runnable::run), HOT_CURRENCIES, 2);
+    }
+
+    @Test
+    void testMaterialize_Stores_Settled_Conversions_Only(){
+        // Assign
+        var purchaseTrx = new PurchaseTrx(98, "test purchase", LocalDateTime.parse("2021-05-15T09:00"), 54356L);
+        given(conversionRepository.findByTrxIdIn(List.of(98L))).willReturn(List.of(PurchaseConversion.builder()
+                .trxId(98).countryCurrency("Euro Zone-Euro").scaledRate(851_000L).convertedCents(46257L).build()));
+
+        // Action
+        var materialized = serviceInTest.materialize(List.of(purchaseTrx));
+
+        // Assert
+        verify(conversionRepository).saveAll(conversionsCaptor.capture());
+        var conversion = conversionsCaptor.getValue().get(0);
+        assertAll("PurchaseConversion",
+                () -> assertEquals(1, materialized),
+                () -> assertEquals(1, conversionsCaptor.getValue().size()),
+                () -> assertEquals("Mexico-Peso", conversion.getCountryCurrency()),
+                () -> assertEquals(20_518_000L, conversion.getScaledRate()),
+                () -> assertEquals(1_115_276L, conversion.getConvertedCents())
+        );
+    }
+
+    @Test
+    void testMaterialize_Stores_Rest_Of_Batch_When_One_Was_Stored_Concurrently(){
+        // Assign
+        var purchaseTrx = new PurchaseTrx(98, "test purchase", LocalDateTime.parse("2021-04-15T09:00"), 54356L);
+        given(conversionRepository.saveAll(anyList())).willThrow(new DataIntegrityViolationException("duplicate"));
+        given(conversionRepository.save(any(PurchaseConversion.class))).willAnswer(invocation -> {
+            PurchaseConversion conversion = invocation.getArgument(0);
+            if (conversion.getCountryCurrency().equals("Euro Zone-Euro")) {
+                throw new DataIntegrityViolationException("duplicate");
+            }
+            return conversion;
+        });
+
+        // Action
+        var materialized = serviceInTest.materialize(List.of(purchaseTrx));
+
+        // Assert
+        verify(conversionRepository, times(2)).save(any(PurchaseConversion.class));
+        assertEquals(1, materialized);
+    }
+
+    @Test
+    void testMaterializeAsync_Skips_Unsettled_Rates(){
+        // Assign
+        var purchaseTrx = new PurchaseTrx(99, "test purchase", LocalDateTime.parse("2021-07-15T09:00"), 54356L);
+
+        // Action
+        serviceInTest.materializeAsync(purchaseTrx);
+
+        // Assert
+        verify(conversionRepository).findByTrxIdIn(List.of(99L));
+        verify(conversionRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    void testFindConversion_Skips_Lookup_For_Other_Currencies(){
+        // Action
+        var conversion = serviceInTest.findConversion(98, "Japan-Yen");
+
+        // Assert
+        assertTrue(conversion.isEmpty());
+        verify(conversionRepository, never()).findWithPurchase(anyLong(), anyString());
+    }
+
+    @Test
+    void testReconcile_Pages_Through_Purchases_Missing_Conversions(){
+        // Assign
+        var firstPage = List.of(
+                new PurchaseTrx(1, "first", LocalDateTime.parse("2021-05-15T09:00"), 1000L),
+                new PurchaseTrx(2, "second", LocalDateTime.parse("2021-07-15T09:00"), 2000L));
+        var secondPage = List.of(new PurchaseTrx(3, "third", LocalDateTime.parse("2021-04-01T09:00"), 3000L));
+        given(purchaseRepository.findMissingConversionsAfter(null, -1L, Set.copyOf(HOT_CURRENCIES), 3, PageRequest.of(0, 2))).willReturn(firstPage);
+        given(purchaseRepository.findMissingConversionsAfter(null, 2L, Set.copyOf(HOT_CURRENCIES), 3, PageRequest.of(0, 2))).willReturn(secondPage);
+
+        // Action
+        serviceInTest.reconcile();
+
+        // Assert
+        verify(conversionRepository, times(2)).saveAll(conversionsCaptor.capture());
+        assertAll("Reconcile",
+                () -> assertEquals(2, conversionsCaptor.getAllValues().get(0).size()),
+                () -> assertEquals(2, conversionsCaptor.getAllValues().get(1).size()),
+                () -> assertEquals(3L, conversionsCaptor.getAllValues().get(1).get(0).getTrxId())
+        );
+    }
+
+    @Test
+    void testReconcile_Next_Run_Starts_From_Oldest_Unsettled_Date(){
+        // Assign
+        // Canada-Dollar's latest rate is the oldest of the hot currencies' latest rates
+        var unsettledFrom = LocalDateTime.parse("2021-03-31T00:00");
+        given(purchaseRepository.findMissingConversionsAfter(any(), anyLong(), any(), anyLong(), any())).willReturn(List.of());
+        serviceInTest.reconcile();
+
+        // Action
+        serviceInTest.reconcile();
+
+        // Assert
+        verify(purchaseRepository).findMissingConversionsAfter(null, -1L, Set.copyOf(HOT_CURRENCIES), 3, PageRequest.of(0, 2));
+        verify(purchaseRepository).findMissingConversionsAfter(unsettledFrom, -1L, Set.copyOf(HOT_CURRENCIES), 3, PageRequest.of(0, 2));
+    }
+
+    private static ExchangeRate rate(String countryCurrency, String recordDate, String exchangeRate){
+        return ExchangeRate.builder()
+                .countryCurrencyDesc(countryCurrency)
+                .recordDate(LocalDate.parse(recordDate))
+                .exchangeRate(new BigDecimal(exchangeRate))
+                .build();
+    }
+}
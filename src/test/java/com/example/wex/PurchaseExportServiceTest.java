@@ -0,0 +1,127 @@
+package com.example.wex;
+
+import com.example.wex.model.PurchaseDailyRollup;
+import com.example.wex.model.PurchaseTrx;
+import com.example.wex.model.RateQuote;
+import com.example.wex.repository.PurchaseDailyRollupRepository;
+import com.example.wex.repository.PurchaseRepository;
+import com.example.wex.service.PurchaseExportService;
+import com.example.wex.service.PurchaseService;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class PurchaseExportServiceTest {
+    private static final LocalDate MARCH_31 = LocalDate.parse("2023-03-31");
+    private static final LocalDate APRIL_1 = LocalDate.parse("2023-04-01");
+
+    @Mock
+    private PurchaseRepository purchaseRepository;
+
+    @Mock
+    private PurchaseDailyRollupRepository rollupRepository;
+
+    @Mock
+    private PurchaseService purchaseService;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private PurchaseExportService serviceInTest;
+
+    @BeforeEach
+    void setUp(){
+        // two purchases per range, so each day below is exported by its own task
+        serviceInTest = new PurchaseExportService(purchaseRepository, rollupRepository, purchaseService, entityManager,
+                transactionManager, 2, 2, 31);
+    }
+
+    @Test
+    void testExport_Writes_Ranges_In_Date_Order_As_One_Gzip_Stream() throws IOException {
+        // Assign
+        given(rollupRepository.findByRollupDateBetweenOrderByRollupDate(MARCH_31, APRIL_1)).willReturn(List.of(
+                new PurchaseDailyRollup(MARCH_31, 2, 54_546L, 200L, 54_346L),
+                new PurchaseDailyRollup(APRIL_1, 1, 1_000L, 1_000L, 1_000L)));
+        given(purchaseRepository.streamRange(MARCH_31.atStartOfDay(), APRIL_1.atStartOfDay())).willAnswer(invocation ->
+                Stream.of(purchase(1, "first, with comma", "2023-03-31T09:00", 54_346L),
+                        purchase(2, "second", "2023-03-31T17:00", 200L)));
+        given(purchaseRepository.streamRange(APRIL_1.atStartOfDay(), APRIL_1.plusDays(1).atStartOfDay())).willAnswer(invocation ->
+                Stream.of(purchase(3, null, "2023-04-01T10:00", 1_000L)));
+        given(purchaseService.getExchangeRate("Dollar", "Canada", MARCH_31)).willReturn(RateQuote.fresh(1_355_000L));
+        given(purchaseService.getExchangeRate("Dollar", "Canada", APRIL_1)).willReturn(null);
+
+        // Action
+        var out = new ByteArrayOutputStream();
+        serviceInTest.export(MARCH_31, APRIL_1, "Dollar", "Canada", out);
+
+        // Assert
+        verify(purchaseService, times(1)).getExchangeRate(eq("Dollar"), eq("Canada"), eq(MARCH_31));
+        verify(entityManager, times(3)).detach(any(PurchaseTrx.class));
+        assertEquals(PurchaseExportService.CSV_HEADER
+                + "1,\"first, with comma\",2023-03-31T09:00,543.46,1.355,736.39,false\n"
+                + "2,second,2023-03-31T17:00,2.00,1.355,2.71,false\n"
+                + "3,,2023-04-01T10:00,10.00,,,\n", gunzip(out.toByteArray()));
+    }
+
+    @Test
+    void testExport_Continues_Range_Over_Rows_Per_Range_In_New_Member() throws IOException {
+        // Assign
+        var first = purchase(1, "first", "2023-03-31T09:00", 100L);
+        var second = purchase(2, "second", "2023-03-31T09:00", 200L);
+        var third = purchase(3, "third", "2023-03-31T17:00", 300L);
+        // not rolled up yet, so the split cannot tell the day holds more than rows-per-range purchases
+        given(rollupRepository.findByRollupDateBetweenOrderByRollupDate(MARCH_31, MARCH_31)).willReturn(List.of());
+        given(purchaseRepository.streamRange(MARCH_31.atStartOfDay(), APRIL_1.atStartOfDay()))
+                .willAnswer(invocation -> Stream.of(first, second, third));
+        given(purchaseRepository.streamRangeAfter(second.getTransactionDate(), 2L, APRIL_1.atStartOfDay()))
+                .willAnswer(invocation -> Stream.of(third));
+        given(purchaseService.getExchangeRate("Dollar", "Canada", MARCH_31)).willReturn(RateQuote.fresh(1_355_000L));
+
+        // Action
+        var out = new ByteArrayOutputStream();
+        serviceInTest.export(MARCH_31, MARCH_31, "Dollar", "Canada", out);
+
+        // Assert
+        verify(purchaseService, times(1)).getExchangeRate(eq("Dollar"), eq("Canada"), eq(MARCH_31));
+        verify(entityManager, times(3)).detach(any(PurchaseTrx.class));
+        assertEquals(PurchaseExportService.CSV_HEADER
+                + "1,first,2023-03-31T09:00,1.00,1.355,1.36,false\n"
+                + "2,second,2023-03-31T09:00,2.00,1.355,2.71,false\n"
+                + "3,third,2023-03-31T17:00,3.00,1.355,4.07,false\n", gunzip(out.toByteArray()));
+    }
+
+    private static PurchaseTrx purchase(long trxId, String description, String transactionDate, long amountInCents) {
+        return new PurchaseTrx(trxId, description, LocalDateTime.parse(transactionDate), amountInCents);
+    }
+
+    private static String gunzip(byte[] gzip) throws IOException {
+        try (var in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.wex;
+
+import com.example.wex.model.PurchaseTrx;
+import com.example.wex.repository.PurchaseRepository;
+import com.example.wex.service.PurchaseBatchService;
+import com.example.wex.service.PurchaseIngestService;
+import com.example.wex.service.PurchaseRollupService;
+import com.example.wex.service.PurchaseService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+public class PurchaseIngestServiceTest {
+    private static final String PURCHASE_LINE = "{\"description\":\"test purchase\",\"trxDate\":\"2023-03-31T10:00\",\"amount\":\"543.456\"}\n";
+
+    @Mock
+    private PurchaseRepository purchaseRepository;
+
+    @Mock
+    private PurchaseRollupService rollupService;
+
+    private PurchaseIngestService serviceInTest;
+
+    @BeforeEach
+    void setUp(){
+        var objectMapper = new ObjectMapper();
+        var batchService = new PurchaseBatchService(new PurchaseService(null, null, null, null, null, null, null, null, null), purchaseRepository, rollupService,
+                Validation.buildDefaultValidatorFactory().getValidator(), objectMapper);
+        serviceInTest = new PurchaseIngestService(batchService, purchaseRepository, rollupService, objectMapper, new SimpleAsyncTaskExecutor());
+        ReflectionTestUtils.setField(serviceInTest, "chunkSize", 100);
+        ReflectionTestUtils.setField(serviceInTest, "queueCapacity", 10);
+        ReflectionTestUtils.setField(serviceInTest, "maxReportedErrors", 2);
+    }
+
+    @Test
+    void testIngestPurchases_Success_Streams_Ndjson_Through_Bounded_Queue() throws IOException {
+        // Assign
+        var savedCount = new AtomicLong();
+        given(purchaseRepository.saveAllAndFlush(anyList())).willAnswer(invocation -> {
+            List<PurchaseTrx> chunk = invocation.getArgument(0);
+            assertTrue(chunk.size() <= 100);
+            savedCount.addAndGet(chunk.size());
+            return chunk;
+        });
+
+        // Action
+        var response = serviceInTest.ingestPurchases(lines(10_050));
+
+        // Assert
+        assertAll("IngestResponse",
+                () -> assertEquals(10_050, response.getSaved()),
+                () -> assertEquals(10_050, savedCount.get()),
+                () -> assertEquals(0, response.getRejected()),
+                () -> assertTrue(response.getPurchasesPerSecond() > 0)
+        );
+    }
+
+    @Test
+    void testIngestPurchases_Success_Accepts_Json_Array_And_Reports_Rejections() throws IOException {
+        // Assign
+        given(purchaseRepository.saveAllAndFlush(anyList())).willAnswer(invocation -> invocation.getArgument(0));
+        var body = """
+                [{"description":"ok","trxDate":"2023-03-31T10:00","amount":"10"},
+                 {"description":"bad amount","trxDate":"2023-03-31T10:00","amount":"$10"},
+                 {"description":"bad date","trxDate":"2023-03-31 10:00","amount":"10"},
+                 {"description":"no amount","trxDate":"2023-03-31T10:00"}]""";
+
+        // Action
+        var response = serviceInTest.ingestPurchases(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+
+        // Assert
+        assertAll("IngestResponse",
+                () -> assertEquals(1, response.getSaved()),
+                () -> assertEquals(3, response.getRejected()),
+                () -> assertEquals(2, response.getErrors().size()),
+                () -> assertEquals(1, response.getErrors().get(0).getIndex())
+        );
+    }
+
+    @Test
+    void testIngestPurchases_Success_Reports_Saved_Purchases_Before_Malformed_Record() throws IOException {
+        // Assign
+        given(purchaseRepository.saveAllAndFlush(anyList())).willAnswer(invocation -> invocation.getArgument(0));
+        var body = new SequenceInputStream(lines(250),
+                new SequenceInputStream(new ByteArrayInputStream("{\"description\":\"torn\",\"trx\n".getBytes(StandardCharsets.UTF_8)),
+                        lines(10)));
+
+        // Action
+        var response = serviceInTest.ingestPurchases(body);
+
+        // Assert
+        assertAll("IngestResponse",
+                () -> assertEquals(250, response.getSaved()),
+                () -> assertEquals(0, response.getRejected()),
+                () -> assertEquals(250, response.getMalformed().getIndex()),
+                () -> assertNotNull(response.getMalformed().getError())
+        );
+    }
+
+    @Test
+    void testIngestPurchases_Exception_Writer_Failure() {
+        // Assign
+        given(purchaseRepository.saveAllAndFlush(anyList())).willThrow(new DataIntegrityViolationException("boom"));
+
+        // Action & Assert
+        assertThrows(IllegalStateException.class, () -> serviceInTest.ingestPurchases(lines(5_000)));
+    }
+
+    private static InputStream lines(int count){
+        var streams = IntStream.range(0, count)
+                .mapToObj(i -> (InputStream) new ByteArrayInputStream(PURCHASE_LINE.getBytes(StandardCharsets.UTF_8)))
+                .toList();
+        return new SequenceInputStream(Collections.enumeration(streams));
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.wex;
+
+import com.example.wex.model.PurchaseTrx;
+import com.example.wex.service.PurchaseJournal;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PurchaseJournalTest {
+    @TempDir
+    Path journalDirectory;
+
+    @Test
+    void testRecover_Returns_Uncommitted_Purchases_After_Crash() throws IOException {
+        // Assign
+        var first = new PurchaseTrx(1, "first purchase", LocalDateTime.parse("2023-03-31T10:00:00.123"), 54346L);
+        var second = new PurchaseTrx(2, null, LocalDateTime.parse("2023-04-01T09:30"), 199L);
+        var journal = new PurchaseJournal(journalDirectory, 1024);
+        journal.sync(journal.append(first));
+        journal.sync(journal.append(second));
+        // crash: closed without anything committed
+        journal.close();
+
+        // Action
+        var recovered = new PurchaseJournal(journalDirectory, 1024).recover();
+
+        // Assert
+        assertEquals(List.of(first, second), recovered);
+    }
+
+    @Test
+    void testRecover_Stops_At_Torn_Record() throws IOException {
+        // Assign
+        var purchase = new PurchaseTrx(1, "whole purchase", LocalDateTime.parse("2023-03-31T10:00"), 54346L);
+        var journal = new PurchaseJournal(journalDirectory, 1024);
+        journal.sync(journal.append(purchase));
+        journal.close();
+        try (var segments = Files.list(journalDirectory)) {
+            var segment = segments.sorted().findFirst().orElseThrow();
+            Files.write(segment, new byte[]{0, 0, 0, 40, 1, 2}, StandardOpenOption.APPEND);
+        }
+
+        // Action
+        var recovered = new PurchaseJournal(journalDirectory, 1024).recover();
+
+        // Assert
+        assertEquals(List.of(purchase), recovered);
+    }
+
+    @Test
+    void testCommitted_Deletes_Rolled_Segments() throws IOException {
+        // Assign
+        var journal = new PurchaseJournal(journalDirectory, 64);
+        long seq = 0;
+        for (int trxId = 1; trxId <= 5; trxId++) {
+            seq = journal.append(new PurchaseTrx(trxId, "rolls every record", LocalDateTime.parse("2023-03-31T10:00"), 100L));
+        }
+        journal.sync(seq);
+        long segmentsBefore = countSegments();
+
+        // Action
+        journal.committed(seq);
+        long segmentsAfterCommit = countSegments();
+        journal.close(seq);
+
+        // Assert
+        assertAll("PurchaseJournal",
+                () -> assertEquals(5, segmentsBefore),
+                () -> assertEquals(1, segmentsAfterCommit),
+                () -> assertEquals(0, countSegments()),
+                () -> assertTrue(new PurchaseJournal(journalDirectory, 64).recover().isEmpty())
+        );
+    }
+
+    private long countSegments() throws IOException {
+        try (var segments = Files.list(journalDirectory)) {
+            return segments.count();
+        }
+    }
+}
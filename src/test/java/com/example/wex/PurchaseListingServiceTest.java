@@ -0,0 +1,119 @@
+package com.example.wex;
+
+import com.example.wex.model.PurchaseFilter;
+import com.example.wex.model.PurchaseTrx;
+import com.example.wex.repository.PurchaseRepository;
+import com.example.wex.service.PurchaseListingService;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class PurchaseListingServiceTest {
+    private static final LocalDateTime FROM = LocalDateTime.parse("2023-01-01T00:00");
+    private static final LocalDateTime TO = LocalDateTime.parse("2023-12-31T23:59");
+
+    @Mock
+    private PurchaseRepository purchaseRepository;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @InjectMocks
+    private PurchaseListingService serviceInTest;
+
+    private PurchaseFilter testFilter;
+
+    @BeforeEach
+    void setUp(){
+        ReflectionTestUtils.setField(serviceInTest, "maxPageSize", 2);
+        testFilter = new PurchaseFilter(FROM, TO, BigDecimal.TEN, null);
+    }
+
+    @Test
+    void testListPurchases_First_Page_Seeks_From_Filter_Start_And_Returns_Cursor(){
+        // Assign
+        var purchases = List.of(purchase(1, "2023-02-01T10:00"), purchase(2, "2023-02-01T10:00"));
+        given(purchaseRepository.findPageAfter(any(), any(), any(), any(), any(), anyLong(), any())).willReturn(purchases);
+
+        // Action
+        var page = serviceInTest.listPurchases(testFilter, null, 42L, 50);
+
+        // Assert
+        verify(purchaseRepository).findPageAfter(FROM, TO, 1000L, null, FROM, -1L, PageRequest.of(0, 2));
+        assertAll("PurchasePage",
+                () -> assertEquals(purchases, page.getPurchases()),
+                () -> assertEquals(LocalDateTime.parse("2023-02-01T10:00"), page.getNextAfterDate()),
+                () -> assertEquals(2L, page.getNextAfterId())
+        );
+    }
+
+    @Test
+    void testListPurchases_Next_Page_Seeks_After_Cursor_And_Ends(){
+        // Assign
+        var cursorDate = LocalDateTime.parse("2023-02-01T10:00");
+        given(purchaseRepository.findPageAfter(any(), any(), any(), any(), any(), anyLong(), any()))
+                .willReturn(List.of(purchase(3, "2023-03-01T10:00")));
+
+        // Action
+        var page = serviceInTest.listPurchases(testFilter, cursorDate, 2L, 2);
+
+        // Assert
+        verify(purchaseRepository).findPageAfter(FROM, TO, 1000L, null, cursorDate, 2L, PageRequest.of(0, 2));
+        assertNull(page.getNextAfterDate());
+        assertNull(page.getNextAfterId());
+    }
+
+    @Test
+    void testListPurchases_Cursor_Date_Without_Id_Seeks_Past_That_Date(){
+        // Assign
+        var cursorDate = LocalDateTime.parse("2023-02-01T10:00");
+        given(purchaseRepository.findPageAfter(any(), any(), any(), any(), any(), anyLong(), any()))
+                .willReturn(List.of(purchase(3, "2023-03-01T10:00")));
+
+        // Action
+        serviceInTest.listPurchases(testFilter, cursorDate, null, 2);
+
+        // Assert
+        verify(purchaseRepository).findPageAfter(FROM, TO, 1000L, null, cursorDate, Long.MAX_VALUE, PageRequest.of(0, 2));
+    }
+
+    @Test
+    void testStreamPurchases_Detaches_Each_Streamed_Purchase(){
+        // Assign
+        var purchases = List.of(purchase(1, "2023-02-01T10:00"), purchase(2, "2023-02-02T10:00"));
+        given(purchaseRepository.streamAll(FROM, TO, 1000L, null)).willReturn(purchases.stream());
+        List<PurchaseTrx> consumed = new ArrayList<>();
+
+        // Action
+        serviceInTest.streamPurchases(testFilter, consumed::add);
+
+        // Assert
+        assertEquals(purchases, consumed);
+        verify(entityManager, times(2)).detach(any(PurchaseTrx.class));
+    }
+
+    private static PurchaseTrx purchase(long trxId, String trxDate){
+        return new PurchaseTrx(trxId, "test purchase", LocalDateTime.parse(trxDate), 2000L);
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.wex;
+
+import com.example.wex.model.PurchaseTrx;
+import com.example.wex.repository.PurchaseRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// each repository call runs in its own transaction, as it does from the services
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class PurchaseRepositoryCacheTest {
+    @Autowired
+    private PurchaseRepository purchaseRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private long trxId;
+
+    @BeforeEach
+    void setUp(){
+        trxId = purchaseRepository.save(PurchaseTrx.builder()
+                .description("cached purchase")
+                .transactionDate(LocalDateTime.parse("2023-03-31T10:00"))
+                .amountInCents(54346L)
+                .build()).getTrxId();
+        entityManagerFactory.getCache().evictAll();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @AfterEach
+    void tearDown(){
+        purchaseRepository.deleteAll();
+    }
+
+    @Test
+    void testFindById_Repeated_Reads_Served_From_Second_Level_Cache(){
+        // Action
+        purchaseRepository.findById(trxId);
+        var purchaseTrx = purchaseRepository.findById(trxId).orElseThrow();
+
+        // Assert
+        assertAll("SecondLevelCache",
+                () -> assertEquals(54346L, purchaseTrx.getAmountInCents()),
+                () -> assertEquals(1, statistics.getSecondLevelCacheMissCount()),
+                () -> assertEquals(1, statistics.getSecondLevelCacheHitCount()),
+                () -> assertEquals(1, statistics.getEntityLoadCount())
+        );
+    }
+
+    @Test
+    void testFindAllByIdCached_Skips_Database_For_Cached_Purchases(){
+        // Assign
+        purchaseRepository.findById(trxId);
+        statistics.clear();
+
+        // Action
+        var purchases = purchaseRepository.findAllByIdCached(List.of(trxId, trxId + 1000));
+
+        // Assert
+        assertAll("MultiLoad",
+                () -> assertEquals(1, purchases.size()),
+                () -> assertEquals(1, statistics.getSecondLevelCacheHitCount()),
+                () -> assertEquals(0, statistics.getEntityLoadCount())
+        );
+    }
+
+    @Test
+    void testFindPageAfter_Repeated_Query_Served_From_Query_Cache() throws InterruptedException {
+        // Assign
+        var from = LocalDateTime.parse("2023-03-01T00:00");
+        var to = LocalDateTime.parse("2023-04-01T00:00");
+        // results are only cached once they are newer than the insert's update timestamp, kept in milliseconds
+        Thread.sleep(5);
+
+        // Action
+        purchaseRepository.findPageAfter(from, to, null, null, from, -1L, PageRequest.of(0, 100));
+        var purchases = purchaseRepository.findPageAfter(from, to, null, null, from, -1L, PageRequest.of(0, 100));
+
+        // Assert
+        assertAll("QueryCache",
+                () -> assertEquals(1, purchases.size()),
+                () -> assertEquals(1, statistics.getQueryCacheMissCount()),
+                () -> assertEquals(1, statistics.getQueryCacheHitCount())
+        );
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.wex;
+
+import com.example.wex.model.PurchaseDailyRollup;
+import com.example.wex.model.PurchaseTrx;
+import com.example.wex.repository.PurchaseDailyRollupRepository;
+import com.example.wex.service.PurchaseRollupService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.RepeatedTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// writers commit their own transactions, as they do from the services
+@DataJpaTest
+@Import(PurchaseRollupService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class PurchaseRollupConcurrencyTest {
+    private static final LocalDate MARCH_31 = LocalDate.parse("2023-03-31");
+    private static final LocalDate APRIL_1 = LocalDate.parse("2023-04-01");
+
+    @Autowired
+    private PurchaseRollupService rollupService;
+
+    @Autowired
+    private PurchaseDailyRollupRepository rollupRepository;
+
+    @AfterEach
+    void tearDown(){
+        rollupRepository.deleteAll();
+    }
+
+    // the two writers only race for the insert on some runs
+    @RepeatedTest(20)
+    void testRecord_Concurrent_First_Writers_Of_Day_Lose_No_Purchases() throws Exception {
+        // Assign
+        var start = new CountDownLatch(1);
+        List<Future<?>> writers = new ArrayList<>();
+
+        // Action
+        try (var executor = Executors.newFixedThreadPool(2)) {
+            for (long cents : new long[]{100L, 300L}) {
+                writers.add(executor.submit(() -> {
+                    start.await();
+                    rollupService.record(List.of(purchase(MARCH_31, cents), purchase(APRIL_1, cents)));
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (var writer : writers) {
+                writer.get();
+            }
+        }
+
+        // Assert
+        var rollups = rollupRepository.findByRollupDateBetweenOrderByRollupDate(MARCH_31, APRIL_1);
+        assertAll("Rollups",
+                () -> assertEquals(2, rollups.size()),
+                () -> assertEquals(new PurchaseDailyRollup(MARCH_31, 2, 400L, 100L, 300L), rollups.get(0)),
+                () -> assertEquals(new PurchaseDailyRollup(APRIL_1, 2, 400L, 100L, 300L), rollups.get(1))
+        );
+    }
+
+    private static PurchaseTrx purchase(LocalDate date, long amountInCents) {
+        return PurchaseTrx.builder()
+                .transactionDate(date.atTime(10, 0))
+                .amountInCents(amountInCents)
+                .build();
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.wex;
+
+import com.example.wex.model.PurchaseTrx;
+import com.example.wex.repository.PurchaseDailyRollupRepository;
+import com.example.wex.repository.PurchaseRepository;
+import com.example.wex.service.PurchaseRollupService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class PurchaseRollupServiceTest {
+    private static final LocalDate MARCH_31 = LocalDate.parse("2023-03-31");
+    private static final LocalDate APRIL_1 = LocalDate.parse("2023-04-01");
+
+    @Mock
+    private PurchaseDailyRollupRepository rollupRepository;
+
+    @Mock
+    private PurchaseRepository purchaseRepository;
+
+    private PurchaseRollupService serviceInTest;
+
+    @BeforeEach
+    void setUp(){
+        serviceInTest = new PurchaseRollupService(rollupRepository, purchaseRepository, new NoOpTransactionManager());
+    }
+
+    @Test
+    void testRecord_Increments_Each_Day_In_Date_Order(){
+        // Assign
+        given(rollupRepository.increment(any(LocalDate.class), anyLong(), anyLong(), anyLong(), anyLong())).willReturn(1);
+
+        // Action
+        serviceInTest.record(List.of(purchase(APRIL_1, 500L), purchase(MARCH_31, 100L), purchase(MARCH_31, 300L)));
+
+        // Assert
+        InOrder inOrder = inOrder(rollupRepository);
+        inOrder.verify(rollupRepository).increment(MARCH_31, 2, 400L, 100L, 300L);
+        inOrder.verify(rollupRepository).increment(APRIL_1, 1, 500L, 500L, 500L);
+    }
+
+    @Test
+    void testRecord_Inserts_First_Rollup_Of_Day(){
+        // Assign
+        given(rollupRepository.increment(any(LocalDate.class), anyLong(), anyLong(), anyLong(), anyLong())).willReturn(0);
+
+        // Action
+        serviceInTest.record(List.of(purchase(MARCH_31, 100L)));
+
+        // Assert
+        verify(rollupRepository).insert(MARCH_31, 1, 100L, 100L, 100L);
+    }
+
+    @Test
+    void testRecord_Retries_When_First_Rollup_Inserted_Concurrently(){
+        // Assign
+        given(rollupRepository.increment(any(LocalDate.class), anyLong(), anyLong(), anyLong(), anyLong()))
+                .willReturn(0, 1);
+        given(rollupRepository.insert(any(LocalDate.class), anyLong(), anyLong(), anyLong(), anyLong()))
+                .willThrow(new DataIntegrityViolationException("duplicate key"));
+
+        // Action
+        serviceInTest.record(List.of(purchase(MARCH_31, 100L)));
+
+        // Assert
+        verify(rollupRepository, times(2)).increment(eq(MARCH_31), anyLong(), anyLong(), anyLong(), anyLong());
+        verify(rollupRepository).insert(eq(MARCH_31), anyLong(), anyLong(), anyLong(), anyLong());
+    }
+
+    private static PurchaseTrx purchase(LocalDate date, long amountInCents) {
+        return PurchaseTrx.builder()
+                .transactionDate(date.atTime(10, 0))
+                .amountInCents(amountInCents)
+                .build();
+    }
+
+    private static class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
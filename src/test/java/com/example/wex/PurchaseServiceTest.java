@@ -1,10 +1,23 @@
 package com.example.wex;
 
+import com.example.wex.model.ExchangeRate;
+import com.example.wex.model.PurchaseConversion;
 import com.example.wex.model.PurchaseRequest;
 import com.example.wex.model.PurchaseResponse;
 import com.example.wex.model.PurchaseTrx;
+import com.example.wex.model.RateKey;
 import com.example.wex.repository.PurchaseRepository;
+import com.example.wex.service.ExchangeRateCache;
+import com.example.wex.service.ExchangeRateClient;
+import com.example.wex.service.ExchangeRateIndex;
+import com.example.wex.service.ExchangeRateUnavailableException;
+import com.example.wex.service.PurchaseConversionService;
+import com.example.wex.service.PurchaseRollupService;
 import com.example.wex.service.PurchaseService;
+import com.example.wex.service.PurchaseWriteBehind;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
@@ -14,30 +27,75 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.concurrent.TimeoutException;
 
 import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willReturn;
+import static org.mockito.BDDMockito.willThrow;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 
 @ExtendWith(MockitoExtension.class)
 public class PurchaseServiceTest {
     @Mock
     private PurchaseRepository purchaseRepository;
 
+    @Spy
+    private ExchangeRateIndex rateIndex = new ExchangeRateIndex(6);
+
+    @Spy
+    private Scheduler repositoryScheduler = Schedulers.immediate();
+
+    @Spy
+    private ExchangeRateClient exchangeRateClient = new ExchangeRateClient(
+            WebClient.builder()
+                    .baseUrl("https://api.fiscaldata.treasury.gov/services/api/fiscal_service/v1/accounting/od/rates_of_exchange")
+                    .build(),
+            new ObjectMapper().findAndRegisterModules(), FiscalDataStubServer.defaultResilience(),
+            new SimpleMeterRegistry(), 6);
+
+    @Mock
+    private ExchangeRateCache rateCache;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Mock
+    private PurchaseConversionService conversionService;
+
+    @Mock
+    private PurchaseWriteBehind writeBehind;
+
+    @Mock
+    private PurchaseRollupService rollupService;
+
     @InjectMocks
     private PurchaseService serviceInTest;
 
@@ -47,7 +105,7 @@ public class PurchaseServiceTest {
     static void init(){
         testTransaction = new PurchaseTrx(99,"this is a test purchase",
                 LocalDateTime.parse("2021-03-31T09:00"),
-                BigDecimal.valueOf(543.56));
+                54356L);
     }
 
     @Nested
@@ -72,6 +130,24 @@ public class PurchaseServiceTest {
 
             // Assert
             verify(purchaseRepository).save(any(PurchaseTrx.class));
+            verify(conversionService).materializeAsync(testTransaction);
+            verify(rollupService).record(List.of(testTransaction));
+            assertEquals(testTransaction,response);
+        }
+
+        @Test
+        void testSavePurchase_WriteBehind_Queues_Without_Saving(){
+            // Assign
+            given(writeBehind.isEnabled()).willReturn(true);
+            given(writeBehind.submit(any(PurchaseTrx.class))).willReturn(testTransaction);
+
+            // Action
+            var response = serviceInTest.createPurchase(testRequest);
+
+            // Assert
+            verify(writeBehind).submit(any(PurchaseTrx.class));
+            verify(purchaseRepository, never()).save(any(PurchaseTrx.class));
+            verify(conversionService, never()).materializeAsync(any(PurchaseTrx.class));
             assertEquals(testTransaction,response);
         }
 
@@ -110,9 +186,6 @@ public class PurchaseServiceTest {
             testResponse = PurchaseResponse.builder().build();
             testCountry = "Mexico";
             testCurrency = "Peso";
-
-            ReflectionTestUtils.setField(serviceInTest,"exchangeRateUrl",
-                    "https://api.fiscaldata.treasury.gov/services/api/fiscal_service/v1/accounting/od/rates_of_exchange");
         }
 
         @Test
@@ -127,12 +200,139 @@ public class PurchaseServiceTest {
             verify(purchaseRepository).findById(testTrxId);
             assertAll("PurchaseResponse",
                 ()->  assertEquals(BigDecimal.valueOf(543.56), response.getOriginalAmt()),
-                () -> assertEquals(20.518, response.getExchangeRate()),
+                () -> assertEquals(new BigDecimal("20.518"), response.getExchangeRate()),
                 () -> assertEquals(BigDecimal.valueOf(11152.76), response.getConvertedAmt()),
                 () -> assertEquals(LocalDateTime.parse("2021-03-31T09:00"), response.getTrxDate())
             );
         }
 
+        @Test
+        void testGetPurchase_Success_Serves_Materialized_Conversion() throws IOException {
+            // Assign
+            given(conversionService.findConversion(testTrxId, "Mexico-Peso")).willReturn(Optional.of(
+                    PurchaseConversion.builder()
+                            .trxId(testTrxId)
+                            .purchase(testTransaction)
+                            .countryCurrency("Mexico-Peso")
+                            .scaledRate(20_518_000L)
+                            .convertedCents(1_115_276L)
+                            .build()));
+
+            // Action
+            var response = serviceInTest.getPurchase(testTrxId,testCurrency,testCountry);
+
+            // Assert
+            verify(purchaseRepository, never()).findById(anyLong());
+            assertAll("PurchaseResponse",
+                () -> assertEquals(new BigDecimal("20.518"), response.getExchangeRate()),
+                () -> assertEquals(BigDecimal.valueOf(11152.76), response.getConvertedAmt())
+            );
+        }
+
+        @Test
+        void testGetPurchase_Success_Uses_Cached_ExchangeRate() throws IOException {
+            // Assign
+            given(purchaseRepository.findById(anyLong())).willReturn(Optional.of(testTransaction));
+            given(rateCache.get(any(RateKey.class))).willReturn(20_518_000L);
+
+            // Action
+            var response = serviceInTest.getPurchase(testTrxId,testCurrency,testCountry);
+
+            // Assert
+            verify(rateCache).get(new RateKey(testCountry, testCurrency, testTransaction.getTransactionDate().toLocalDate()));
+            verify(rateCache, never()).put(any(RateKey.class), anyLong());
+            assertEquals(BigDecimal.valueOf(11152.76), response.getConvertedAmt());
+            assertEquals(1, meterRegistry.counter("purchase.exchange-rate.resolutions", "source", "cache").count());
+        }
+
+        @Test
+        void testGetPurchase_Success_Uses_Indexed_ExchangeRate() throws IOException {
+            // Assign
+            var indexedTransaction = new PurchaseTrx(98,"this is a test purchase",
+                    LocalDateTime.parse("2021-05-15T09:00"),
+                    54356L);
+            rateIndex.load(List.of(ExchangeRate.builder()
+                    .countryCurrencyDesc("Mexico-Peso")
+                    .recordDate(LocalDate.parse("2021-03-31"))
+                    .exchangeRate(new BigDecimal("20.518"))
+                    .build()));
+            given(purchaseRepository.findById(anyLong())).willReturn(Optional.of(indexedTransaction));
+
+            // Action
+            var response = serviceInTest.getPurchase(testTrxId,testCurrency,testCountry);
+
+            // Assert
+            verify(rateCache, never()).get(any(RateKey.class));
+            assertEquals(new BigDecimal("20.518"), response.getExchangeRate());
+            assertEquals(BigDecimal.valueOf(11152.76), response.getConvertedAmt());
+        }
+
+        @Test
+        void testGetPurchaseAsync_Success_Uses_Indexed_ExchangeRate() {
+            // Assign
+            var indexedTransaction = new PurchaseTrx(98,"this is a test purchase",
+                    LocalDateTime.parse("2021-05-15T09:00"),
+                    54356L);
+            rateIndex.load(List.of(ExchangeRate.builder()
+                    .countryCurrencyDesc("Mexico-Peso")
+                    .recordDate(LocalDate.parse("2021-03-31"))
+                    .exchangeRate(new BigDecimal("20.518"))
+                    .build()));
+            given(purchaseRepository.findById(anyLong())).willReturn(Optional.of(indexedTransaction));
+
+            // Action
+            var response = serviceInTest.getPurchaseAsync(testTrxId,testCurrency,testCountry).block();
+
+            // Assert
+            verify(purchaseRepository).findById(testTrxId);
+            assertEquals(BigDecimal.valueOf(11152.76), response.getConvertedAmt());
+        }
+
+        @Test
+        void testGetPurchase_Success_Stale_ExchangeRate_When_Api_Unavailable() throws IOException {
+            // Assign
+            var key = new RateKey(testCountry, testCurrency, testTransaction.getTransactionDate().toLocalDate());
+            given(purchaseRepository.findById(anyLong())).willReturn(Optional.of(testTransaction));
+            willThrow(new ExchangeRateUnavailableException(new TimeoutException()))
+                    .given(exchangeRateClient).fetchLatestRate(key);
+            given(rateCache.getLastKnownGood(key)).willReturn(20_518_000L);
+
+            // Action
+            var response = serviceInTest.getPurchase(testTrxId,testCurrency,testCountry);
+
+            // Assert
+            verify(rateCache, never()).put(any(RateKey.class), anyLong());
+            assertAll("PurchaseResponse",
+                () -> assertTrue(response.isStale()),
+                () -> assertEquals(new BigDecimal("20.518"), response.getExchangeRate()),
+                () -> assertEquals(BigDecimal.valueOf(11152.76), response.getConvertedAmt())
+            );
+        }
+
+        @Test
+        void testGetPurchase_Exception_ExchangeRateApi_Unavailable_No_Known_Rate() throws IOException {
+            // Assign
+            given(purchaseRepository.findById(anyLong())).willReturn(Optional.of(testTransaction));
+            willThrow(new ExchangeRateUnavailableException(new TimeoutException()))
+                    .given(exchangeRateClient).fetchLatestRate(any(RateKey.class));
+
+            // Action & Assert
+            assertThrows(ExchangeRateUnavailableException.class,
+                    () -> serviceInTest.getPurchase(testTrxId,testCurrency,testCountry));
+        }
+
+        @Test
+        void testGetPurchaseAsync_Error_No_Transaction_Exists() {
+            // Assign
+            given(purchaseRepository.findById(anyLong())).willReturn(Optional.empty());
+
+            // Action
+            var response = serviceInTest.getPurchaseAsync(testTrxId,testCurrency,testCountry);
+
+            // Assert
+            assertThrows(NoSuchElementException.class, response::block);
+        }
+
         @Test
         void testGetPurchase_Return_Null_ExchangeRateApi_NoResponse() throws IOException {
             // Assign
@@ -150,7 +350,7 @@ public class PurchaseServiceTest {
         @Test
         void testGetPurchase_Return_Null_ExchangeRate_Missing() throws IOException {
             // Assign
-            testTransaction.setTransactionDate(LocalDateTime.parse("2023-12-31T09:00"));
+            testTransaction.setTransactionDate(LocalDateTime.parse("1990-12-31T09:00"));
             given(purchaseRepository.findById(anyLong())).willReturn(Optional.of(testTransaction));
 
             // Action
@@ -161,4 +361,159 @@ public class PurchaseServiceTest {
             assertNull(response);
         }
     }
+
+    @Nested
+    class TestGetPurchases {
+        String testCountry = "Mexico";
+        String testCurrency = "Peso";
+
+        @BeforeEach
+        void setUp() {
+            rateIndex.load(List.of(ExchangeRate.builder()
+                    .countryCurrencyDesc("Mexico-Peso")
+                    .recordDate(LocalDate.parse("2021-03-31"))
+                    .exchangeRate(new BigDecimal("20.518"))
+                    .build()));
+            ReflectionTestUtils.setField(serviceInTest, "maxPageSize", 2);
+        }
+
+        @Test
+        void testGetPurchases_Success_Resolves_Each_Distinct_Date_Once() throws IOException {
+            // Assign
+            var purchases = List.of(
+                    new PurchaseTrx(1,"first",LocalDateTime.parse("2021-05-15T09:00"),1000L),
+                    new PurchaseTrx(2,"second",LocalDateTime.parse("2021-05-15T17:30"),2000L),
+                    new PurchaseTrx(3,"third",LocalDateTime.parse("2021-06-01T09:00"),3000L));
+            given(purchaseRepository.findAllByIdCached(anyList())).willReturn(purchases);
+            ReflectionTestUtils.setField(serviceInTest, "maxPageSize", 4);
+
+            // Action
+            var response = serviceInTest.getPurchases(List.of(1L, 2L, 3L, 4L), testCurrency, testCountry);
+
+            // Assert
+            verify(purchaseRepository).findAllByIdCached(List.of(1L, 2L, 3L, 4L));
+            verify(rateIndex, times(2)).floorRate(anyString(), any(LocalDate.class));
+            assertAll("BulkConversionResponse",
+                    () -> assertEquals(3, response.getConversions().size()),
+                    () -> assertEquals(BigDecimal.valueOf(410.36), response.getConversions().get(1).getConvertedAmt()),
+                    () -> assertEquals(List.of(4L), response.getNotFoundIds()),
+                    () -> assertEquals(List.of(), response.getMissingRateIds())
+            );
+        }
+
+        @Test
+        void testGetPurchases_Success_Converts_Purchase_Pending_Write_Behind() throws IOException {
+            // Assign
+            var pending = new PurchaseTrx(2,"queued",LocalDateTime.parse("2021-05-15T09:00"),1000L);
+            given(purchaseRepository.findAllByIdCached(anyList())).willReturn(List.of());
+            given(writeBehind.findPending(1L)).willReturn(Optional.empty());
+            given(writeBehind.findPending(2L)).willReturn(Optional.of(pending));
+
+            // Action
+            var response = serviceInTest.getPurchases(List.of(1L, 2L), testCurrency, testCountry);
+
+            // Assert
+            assertAll("BulkConversionResponse",
+                    () -> assertEquals(1, response.getConversions().size()),
+                    () -> assertEquals(2L, response.getConversions().get(0).getTransactionId()),
+                    () -> assertEquals(List.of(1L), response.getNotFoundIds())
+            );
+        }
+
+        @Test
+        void testGetPurchases_Exception_More_Ids_Than_Max_Page_Size() {
+            // Action & Assert
+            assertThrows(IllegalArgumentException.class,
+                    () -> serviceInTest.getPurchases(List.of(1L, 2L, 3L), testCurrency, testCountry));
+            verifyNoInteractions(purchaseRepository);
+        }
+
+        @Test
+        void testGetPurchases_Reports_Missing_Rates_For_Date_Range() throws IOException {
+            // Assign
+            var from = LocalDateTime.parse("2021-01-01T00:00");
+            var to = LocalDateTime.parse("2021-12-31T23:59");
+            var purchases = List.of(
+                    new PurchaseTrx(1,"first",LocalDateTime.parse("2021-05-15T09:00"),1000L),
+                    new PurchaseTrx(2,"second",LocalDateTime.parse("2021-01-15T09:00"),2000L));
+            given(purchaseRepository.findPageAfter(from, to, null, null, from, -1L, PageRequest.of(0, 2))).willReturn(purchases);
+            willReturn(null).given(exchangeRateClient).fetchLatestRate(any(RateKey.class));
+
+            // Action
+            var response = serviceInTest.getPurchases(from, to, null, null, 100, testCurrency, testCountry);
+
+            // Assert
+            assertAll("BulkConversionResponse",
+                    () -> assertEquals(1, response.getConversions().size()),
+                    () -> assertEquals(List.of(2L), response.getMissingRateIds()),
+                    () -> assertEquals(LocalDateTime.parse("2021-01-15T09:00"), response.getNextAfterDate()),
+                    () -> assertEquals(2L, response.getNextAfterId())
+            );
+        }
+
+        @Test
+        void testGetPurchases_Last_Page_Of_Date_Range_Has_No_Cursor() throws IOException {
+            // Assign
+            var from = LocalDateTime.parse("2021-01-01T00:00");
+            var to = LocalDateTime.parse("2021-12-31T23:59");
+            var afterDate = LocalDateTime.parse("2021-01-15T09:00");
+            var purchases = List.of(new PurchaseTrx(3,"third",LocalDateTime.parse("2021-05-15T09:00"),1000L));
+            given(purchaseRepository.findPageAfter(from, to, null, null, afterDate, 2L, PageRequest.of(0, 2))).willReturn(purchases);
+
+            // Action
+            var response = serviceInTest.getPurchases(from, to, afterDate, 2L, 100, testCurrency, testCountry);
+
+            // Assert
+            assertAll("BulkConversionResponse",
+                    () -> assertEquals(1, response.getConversions().size()),
+                    () -> assertNull(response.getNextAfterDate()),
+                    () -> assertNull(response.getNextAfterId())
+            );
+        }
+    }
+
+    @Nested
+    class TestGetPurchaseMultiCurrency {
+
+        @BeforeEach
+        void setUp() {
+            ReflectionTestUtils.setField(serviceInTest, "maxParallelLookups", 2);
+            rateIndex.load(List.of(
+                    ExchangeRate.builder().countryCurrencyDesc("Mexico-Peso")
+                            .recordDate(LocalDate.parse("2021-03-31")).exchangeRate(new BigDecimal("20.518")).build(),
+                    ExchangeRate.builder().countryCurrencyDesc("Canada-Dollar")
+                            .recordDate(LocalDate.parse("2021-03-31")).exchangeRate(new BigDecimal("1.257")).build(),
+                    ExchangeRate.builder().countryCurrencyDesc("Euro Zone-Euro")
+                            .recordDate(LocalDate.parse("2021-03-31")).exchangeRate(new BigDecimal("0.851")).build()));
+        }
+
+        @Test
+        void testGetPurchase_Success_Converts_Each_Target_In_Request_Order() {
+            // Assign
+            var purchaseTrx = new PurchaseTrx(98,"this is a test purchase",
+                    LocalDateTime.parse("2021-05-15T09:00"), 54356L);
+            given(purchaseRepository.findById(anyLong())).willReturn(Optional.of(purchaseTrx));
+
+            // Action
+            var response = serviceInTest.getPurchase(98L,
+                    List.of("Mexico-Peso", "Euro Zone-Euro", "Canada-Dollar", "Mexico-Peso")).block();
+
+            // Assert
+            verify(purchaseRepository).findById(98L);
+            assertAll("MultiCurrencyResponse",
+                    () -> assertEquals(List.of("Mexico-Peso", "Euro Zone-Euro", "Canada-Dollar"),
+                            List.copyOf(response.getConversions().keySet())),
+                    () -> assertEquals(BigDecimal.valueOf(11152.76), response.getConversions().get("Mexico-Peso").getConvertedAmt()),
+                    () -> assertEquals(BigDecimal.valueOf(462.57), response.getConversions().get("Euro Zone-Euro").getConvertedAmt()),
+                    () -> assertEquals(List.of(), response.getMissingRates())
+            );
+        }
+
+        @Test
+        void testGetPurchase_Exception_Malformed_Target() {
+            // Action & Assert
+            assertThrows(IllegalArgumentException.class, () -> serviceInTest.getPurchase(98L, List.of("Peso")));
+            verify(purchaseRepository, never()).findById(anyLong());
+        }
+    }
 }
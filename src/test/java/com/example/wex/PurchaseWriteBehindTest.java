@@ -0,0 +1,239 @@
+package com.example.wex;
+
+import com.example.wex.model.PurchaseTrx;
+import com.example.wex.repository.PurchaseDailyRollupRepository;
+import com.example.wex.repository.PurchaseRepository;
+import com.example.wex.service.PurchaseConversionService;
+import com.example.wex.service.PurchaseIdAllocator;
+import com.example.wex.service.PurchaseJournal;
+import com.example.wex.service.PurchaseRollupService;
+import com.example.wex.service.PurchaseWriteBehind;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.willAnswer;
+
+// the writer commits on its own thread, so the test must not hold a transaction open
+@DataJpaTest
+@ExtendWith(MockitoExtension.class)
+@Import({PurchaseIdAllocator.class, PurchaseRollupService.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class PurchaseWriteBehindTest {
+    private static final LocalDateTime TRANSACTION_DATE = LocalDateTime.parse("2023-03-31T10:00");
+
+    @TempDir
+    Path journalDirectory;
+
+    @Autowired
+    private PurchaseIdAllocator idAllocator;
+
+    @Autowired
+    private PurchaseRollupService rollupService;
+
+    @Autowired
+    private PurchaseRepository purchaseRepository;
+
+    @Autowired
+    private PurchaseDailyRollupRepository rollupRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Mock
+    private PurchaseConversionService conversionService;
+
+    private SimpleMeterRegistry meterRegistry;
+    private List<PurchaseTrx> materialized;
+    private CountDownLatch firstBatchWritten;
+    private CountDownLatch releaseFirstBatch;
+
+    @BeforeEach
+    void setUp(){
+        meterRegistry = new SimpleMeterRegistry();
+        materialized = new ArrayList<>();
+        firstBatchWritten = new CountDownLatch(1);
+        releaseFirstBatch = new CountDownLatch(0);
+    }
+
+    @AfterEach
+    void tearDown(){
+        purchaseRepository.deleteAll();
+        rollupRepository.deleteAll();
+    }
+
+    @Test
+    void testSubmit_Commits_Queued_Purchases_In_One_Batch() throws InterruptedException {
+        // Assign
+        releaseFirstBatch = new CountDownLatch(1);
+        recordMaterialized();
+        var writeBehind = writeBehind();
+        writeBehind.start();
+        writeBehind.submit(purchase("first purchase"));
+        assertTrue(firstBatchWritten.await(10, TimeUnit.SECONDS));
+
+        // Action
+        for (int i = 0; i < 20; i++) {
+            writeBehind.submit(purchase("queued purchase " + i));
+        }
+        releaseFirstBatch.countDown();
+        writeBehind.stop();
+
+        // Assert
+        var batchSizes = meterRegistry.get("purchase.write-behind.batch.size").summary();
+        assertAll("WriteBehind",
+                () -> assertEquals(21, purchaseRepository.count()),
+                () -> assertEquals(2, batchSizes.count()),
+                () -> assertEquals(20, batchSizes.max()),
+                () -> assertEquals(21, materialized.size())
+        );
+    }
+
+    @Test
+    void testStart_Replays_Journaled_Purchases_After_Crash() throws IOException {
+        // Assign
+        var inserted = purchase("committed before the crash");
+        var journaled = List.of(inserted, purchase("journaled only"), purchase("journaled only too"));
+        var journal = new PurchaseJournal(journalDirectory, DataSize.ofMegabytes(1).toBytes());
+        for (var purchaseTrx : journaled) {
+            purchaseTrx.setTrxId(idAllocator.next());
+            journal.sync(journal.append(purchaseTrx));
+        }
+        // crash: the first purchase landed, but the journal never learned it was committed
+        journal.close();
+        jdbcTemplate.update("insert into purchase_trx (trx_id, description, transaction_date, amount_in_cents) values (?, ?, ?, ?)",
+                inserted.getTrxId(), inserted.getDescription(), inserted.getTransactionDate(), inserted.getAmountInCents());
+        var writeBehind = writeBehind();
+
+        // Action
+        writeBehind.start();
+        writeBehind.stop();
+
+        // Assert
+        assertAll("WriteBehind",
+                () -> assertEquals(new HashSet<>(journaled),
+                        new HashSet<>(purchaseRepository.findAllById(journaled.stream().map(PurchaseTrx::getTrxId).toList()))),
+                () -> assertEquals(3, purchaseRepository.count()),
+                () -> assertTrue(new PurchaseJournal(journalDirectory, DataSize.ofMegabytes(1).toBytes()).recover().isEmpty())
+        );
+    }
+
+    @Test
+    void testStop_Drains_Queue_Before_Closing_Journal() throws IOException {
+        // Assign
+        recordMaterialized();
+        var writeBehind = writeBehind();
+        writeBehind.start();
+        for (int i = 0; i < 50; i++) {
+            writeBehind.submit(purchase("purchase " + i));
+        }
+
+        // Action
+        writeBehind.stop();
+
+        // Assert
+        assertAll("WriteBehind",
+                () -> assertEquals(50, purchaseRepository.count()),
+                () -> assertEquals(50, materialized.size()),
+                () -> assertTrue(new PurchaseJournal(journalDirectory, DataSize.ofMegabytes(1).toBytes()).recover().isEmpty())
+        );
+    }
+
+    @Test
+    void testSubmit_Parks_Rejected_Purchase_And_Writes_Rest_Of_Batch() throws IOException, InterruptedException {
+        // Assign
+        releaseFirstBatch = new CountDownLatch(1);
+        recordMaterialized();
+        var writeBehind = writeBehind();
+        writeBehind.start();
+        writeBehind.submit(purchase("first purchase"));
+        assertTrue(firstBatchWritten.await(10, TimeUnit.SECONDS));
+        var rejected = purchase("x".repeat(51));
+
+        // Action
+        for (int i = 0; i < 10; i++) {
+            writeBehind.submit(purchase("queued purchase " + i));
+        }
+        writeBehind.submit(rejected);
+        for (int i = 10; i < 20; i++) {
+            writeBehind.submit(purchase("queued purchase " + i));
+        }
+        releaseFirstBatch.countDown();
+        writeBehind.stop();
+
+        // Assert
+        assertAll("WriteBehind",
+                () -> assertEquals(21, purchaseRepository.count()),
+                () -> assertTrue(purchaseRepository.findById(rejected.getTrxId()).isEmpty()),
+                () -> assertEquals(1, meterRegistry.get("purchase.write-behind.parked").counter().count()),
+                () -> assertEquals(List.of(rejected),
+                        new PurchaseJournal(journalDirectory.resolve("parked"), DataSize.ofMegabytes(1).toBytes()).recover()),
+                () -> assertTrue(new PurchaseJournal(journalDirectory, DataSize.ofMegabytes(1).toBytes()).recover().isEmpty()),
+                () -> assertEquals(21, materialized.size()),
+                () -> assertFalse(materialized.contains(rejected))
+        );
+    }
+
+    /**
+     * Records what the writer hands on for conversion, holding it after its first batch until
+     * {@code releaseFirstBatch} opens, so later submits queue up behind it.
+     */
+    private void recordMaterialized() {
+        willAnswer(invocation -> {
+            List<PurchaseTrx> purchases = invocation.getArgument(0);
+            materialized.addAll(purchases);
+            firstBatchWritten.countDown();
+            releaseFirstBatch.await(10, TimeUnit.SECONDS);
+            return null;
+        }).given(conversionService).materializeAsync(anyList());
+    }
+
+    private PurchaseWriteBehind writeBehind() {
+        return new PurchaseWriteBehind(idAllocator, conversionService, rollupService, jdbcTemplate, transactionManager,
+                entityManagerFactory, meterRegistry, true, journalDirectory, DataSize.ofMegabytes(1), 100, 500,
+                Duration.ofSeconds(1), Duration.ofMillis(10));
+    }
+
+    private static PurchaseTrx purchase(String description) {
+        return PurchaseTrx.builder()
+                .description(description)
+                .transactionDate(TRANSACTION_DATE)
+                .amountInCents(100L)
+                .build();
+    }
+}